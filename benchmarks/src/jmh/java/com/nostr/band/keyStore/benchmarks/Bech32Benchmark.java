@@ -0,0 +1,47 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Bech32;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Bech32Benchmark {
+
+  private byte[] publicKey;
+  private String npub;
+  private byte[] nsecBytes;
+  private final byte[] output = new byte[32];
+
+  @Setup
+  public void setup() {
+    publicKey = Fixtures.randomBytes(32);
+    npub = Bech32.encodeBytes("npub", publicKey, Bech32.Encoding.Bech32);
+    nsecBytes = Bech32.encodeBytes("nsec", Fixtures.randomBytes(32), Bech32.Encoding.Bech32).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Benchmark
+  public String encodeBytes() {
+    return Bech32.encodeBytes("npub", publicKey, Bech32.Encoding.Bech32);
+  }
+
+  @Benchmark
+  public byte[] decodeBytes() {
+    return Bech32.decodeBytes(npub, false).getSecond();
+  }
+
+  @Benchmark
+  public int decodeBytesInto() {
+    return Bech32.decodeBytesInto(nsecBytes, "nsec", output);
+  }
+}
@@ -0,0 +1,76 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Nip44;
+import com.nostr.band.keyStore.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// NIP-04 and NIP-44 side by side, with the per-peer secret already derived as it is on a cache hit.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncryptionBenchmark {
+
+  @Param({"16", "1024", "16384", "65535"})
+  public int messageSize;
+
+  private byte[] privateKey;
+  private byte[] peerPublicKey;
+  private byte[] sharedSecret;
+  private byte[] conversationKey;
+  private String message;
+  private String nip04Payload;
+  private String nip44Payload;
+
+  @Setup
+  public void setup() {
+    privateKey = Fixtures.privateKey();
+    peerPublicKey = Utils.pubkeyCreate(Fixtures.privateKey());
+    sharedSecret = Utils.getSharedSecret(privateKey, peerPublicKey);
+    conversationKey = Nip44.getConversationKey(sharedSecret);
+    // ascii only, so the utf-8 size stays within the NIP-44 limit
+    message = new String(new char[messageSize]).replace('\0', 'a');
+    nip04Payload = Utils.encrypt(message, sharedSecret);
+    nip44Payload = Nip44.encrypt(message, conversationKey);
+  }
+
+  @Benchmark
+  public String nip04Encrypt() {
+    return Utils.encrypt(message, sharedSecret);
+  }
+
+  @Benchmark
+  public String nip04Decrypt() {
+    return Utils.decrypt(nip04Payload, sharedSecret);
+  }
+
+  @Benchmark
+  public String nip44Encrypt() {
+    return Nip44.encrypt(message, conversationKey);
+  }
+
+  @Benchmark
+  public String nip44Decrypt() {
+    return Nip44.decrypt(nip44Payload, conversationKey);
+  }
+
+  // Full NIP-04 path on a cache miss: ECDH plus encryption.
+  @Benchmark
+  public String nip04EncryptWithKeyAgreement() {
+    return Utils.encrypt(message, privateKey, peerPublicKey);
+  }
+
+  @Benchmark
+  public byte[] nip44ConversationKey() {
+    return Nip44.getConversationKey(privateKey, peerPublicKey);
+  }
+}
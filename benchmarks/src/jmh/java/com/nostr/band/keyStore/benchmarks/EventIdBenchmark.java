@@ -0,0 +1,79 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.nostr.band.keyStore.Utils;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventIdBenchmark {
+
+  private static final long CREATED_AT = 1700000000L;
+
+  @Param({"0", "10", "100", "1000"})
+  public int tagCount;
+
+  @Param({"0", "1024", "102400"})
+  public int contentSize;
+
+  private byte[] pubKey;
+  private List<List<String>> tags;
+  private JSONArray jsonTags;
+  private String content;
+  private Gson gson;
+  private MessageDigest digest;
+
+  @Setup
+  public void setup() throws NoSuchAlgorithmException {
+    pubKey = Fixtures.randomBytes(32);
+    tags = new ArrayList<>(tagCount);
+    jsonTags = new JSONArray();
+    for (int i = 0; i < tagCount; i++) {
+      List<String> tag = Arrays.asList("p", Hex.toHexString(Fixtures.randomBytes(32)), "wss://relay.example.com", "contact " + i);
+      tags.add(tag);
+      jsonTags.put(new JSONArray(tag));
+    }
+    content = Fixtures.text(contentSize);
+    gson = new GsonBuilder().disableHtmlEscaping().create();
+    digest = MessageDigest.getInstance("SHA-256");
+  }
+
+  @Benchmark
+  public byte[] generateId() {
+    return Utils.generateId(pubKey, CREATED_AT, 1, tags, content);
+  }
+
+  @Benchmark
+  public byte[] generateIdFromJson() {
+    return Utils.generateId(pubKey, CREATED_AT, 1, jsonTags, content);
+  }
+
+  // How ids were computed before the streaming serializer: Gson to a String, then hash its bytes.
+  // The digest is reused like the one in CryptoContext, so only the serialization differs.
+  @Benchmark
+  public byte[] gsonBaseline() {
+    String rawEventJson = gson.toJson(Arrays.asList(0, Hex.toHexString(pubKey), CREATED_AT, 1, tags, content));
+    digest.reset();
+    return digest.digest(rawEventJson.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,42 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Utils;
+
+import java.util.Random;
+
+final class Fixtures {
+
+  private static final Random random = new Random(42);
+
+  private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,!?\"\né中";
+
+  private Fixtures() {
+  }
+
+  static synchronized byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  static byte[] privateKey() {
+    while (true) {
+      byte[] privateKey = randomBytes(32);
+      try {
+        Utils.pubkeyCreate(privateKey);
+        return privateKey;
+      } catch (RuntimeException e) {
+        // out of the curve order, try another one
+      }
+    }
+  }
+
+  // Mostly ascii text with a few characters that need escaping or multi-byte encoding.
+  static synchronized String text(int size) {
+    StringBuilder builder = new StringBuilder(size);
+    for (int i = 0; i < size; i++) {
+      builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+    }
+    return builder.toString();
+  }
+}
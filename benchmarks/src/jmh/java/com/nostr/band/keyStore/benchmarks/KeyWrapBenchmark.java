@@ -0,0 +1,84 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+// The two KeyWrapper schemes with software JCE keys: RSA/ECB/PKCS1 against AES-256-GCM, for
+// unwrapping an nsec and for creating the wrapping key. The Android keystore runs the same
+// operations in the TEE or StrongBox, so absolute numbers on a device are much higher, but the
+// gap between the schemes goes the same way.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyWrapBenchmark {
+
+  private static final byte[] ALIAS = "alias".getBytes(StandardCharsets.US_ASCII);
+
+  private KeyPair rsaKeyPair;
+  private byte[] rsaWrapped;
+  private SecretKey aesKey;
+  private byte[] aesIv;
+  private byte[] aesWrapped;
+
+  @Setup
+  public void setup() throws GeneralSecurityException {
+    byte[] nsec = Fixtures.text(63).getBytes(StandardCharsets.UTF_8);
+
+    rsaKeyPair = generateRsaKeyPair();
+    Cipher rsa = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+    rsa.init(Cipher.ENCRYPT_MODE, rsaKeyPair.getPublic());
+    rsaWrapped = rsa.doFinal(nsec);
+
+    aesKey = generateAesKey();
+    Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+    aes.init(Cipher.ENCRYPT_MODE, aesKey);
+    aes.updateAAD(ALIAS);
+    aesIv = aes.getIV();
+    aesWrapped = aes.doFinal(nsec);
+  }
+
+  @Benchmark
+  public byte[] unwrapRsa() throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+    cipher.init(Cipher.DECRYPT_MODE, rsaKeyPair.getPrivate());
+    return cipher.doFinal(rsaWrapped);
+  }
+
+  @Benchmark
+  public byte[] unwrapAesGcm() throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(128, aesIv));
+    cipher.updateAAD(ALIAS);
+    return cipher.doFinal(aesWrapped);
+  }
+
+  @Benchmark
+  public KeyPair generateRsaKeyPair() throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  @Benchmark
+  public SecretKey generateAesKey() throws GeneralSecurityException {
+    KeyGenerator generator = KeyGenerator.getInstance("AES");
+    generator.init(256);
+    return generator.generateKey();
+  }
+}
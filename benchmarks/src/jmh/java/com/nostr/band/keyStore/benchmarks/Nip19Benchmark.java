@@ -0,0 +1,82 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Nip19;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.spongycastle.util.encoders.Hex.toHexString;
+
+// Contact list sized batches, reported per entity.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Nip19Benchmark {
+
+  private static final int BATCH_SIZE = 1000;
+
+  private final JSONObject[] npubEntities = new JSONObject[BATCH_SIZE];
+  private final String[] npubs = new String[BATCH_SIZE];
+  private final JSONObject[] nprofileEntities = new JSONObject[BATCH_SIZE];
+  private final String[] nprofiles = new String[BATCH_SIZE];
+
+  @Setup
+  public void setup() throws JSONException {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      String publicKey = toHexString(Fixtures.randomBytes(32));
+
+      npubEntities[i] = new JSONObject().put("type", "npub").put("data", publicKey);
+      npubs[i] = Nip19.encode(npubEntities[i]);
+
+      JSONObject profile = new JSONObject()
+          .put("pubkey", publicKey)
+          .put("relays", new JSONArray().put("wss://relay.damus.io").put("wss://nos.lol"));
+      nprofileEntities[i] = new JSONObject().put("type", "nprofile").put("data", profile);
+      nprofiles[i] = Nip19.encode(nprofileEntities[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void encodeNpubs(Blackhole blackhole) throws JSONException {
+    for (JSONObject entity : npubEntities) {
+      blackhole.consume(Nip19.encode(entity));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void decodeNpubs(Blackhole blackhole) throws JSONException {
+    for (String npub : npubs) {
+      blackhole.consume(Nip19.decode(npub));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void encodeNprofiles(Blackhole blackhole) throws JSONException {
+    for (JSONObject entity : nprofileEntities) {
+      blackhole.consume(Nip19.encode(entity));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void decodeNprofiles(Blackhole blackhole) throws JSONException {
+    for (String nprofile : nprofiles) {
+      blackhole.consume(Nip19.decode(nprofile));
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.EventVerifier;
+import com.nostr.band.keyStore.Nip44;
+import com.nostr.band.keyStore.Nip59;
+import com.nostr.band.keyStore.Utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.spongycastle.util.encoders.Hex.toHexString;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Nip59Benchmark {
+
+  private byte[] authorPrivateKey;
+  private byte[] authorPublicKey;
+  private byte[] recipientPrivateKey;
+  private byte[] recipientPublicKey;
+  private byte[] conversationKey;
+  private JSONObject rumor;
+  private JSONObject giftWrap;
+  private EventVerifier verifier;
+
+  @Setup
+  public void setup() throws JSONException {
+    authorPrivateKey = Fixtures.privateKey();
+    authorPublicKey = Utils.pubkeyCreate(authorPrivateKey);
+    recipientPrivateKey = Fixtures.privateKey();
+    recipientPublicKey = Utils.pubkeyCreate(recipientPrivateKey);
+    conversationKey = Nip44.getConversationKey(authorPrivateKey, recipientPublicKey);
+
+    JSONObject event = new JSONObject()
+        .put("kind", 14)
+        .put("created_at", 1700000000L)
+        .put("tags", new JSONArray().put(new JSONArray().put("p").put(toHexString(recipientPublicKey))))
+        .put("content", Fixtures.text(280));
+    rumor = Nip59.createRumor(event, authorPublicKey);
+    giftWrap = wrap();
+    verifier = new EventVerifier(16);
+  }
+
+  @Benchmark
+  public JSONObject wrap() throws JSONException {
+    return Nip59.wrap(Nip59.seal(rumor, authorPublicKey, authorPrivateKey, conversationKey), recipientPublicKey);
+  }
+
+  // The seal layer with a cached conversation key, as the plugin does for known senders. The
+  // cache hands out copies, unwrap wipes them.
+  @Benchmark
+  public JSONObject unwrap() throws JSONException {
+    return Nip59.unwrap(giftWrap, recipientPrivateKey, verifier, author -> conversationKey.clone());
+  }
+
+  @Benchmark
+  public JSONObject unwrapUncached() throws JSONException {
+    return Nip59.unwrap(giftWrap, recipientPrivateKey, verifier, author -> Nip44.getConversationKey(recipientPrivateKey, author));
+  }
+}
@@ -0,0 +1,61 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.PowMiner;
+import com.nostr.band.keyStore.Utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.spongycastle.util.encoders.Hex.toHexString;
+
+// Hashes per second for one worker: the miner's cloned prefix state against re-serializing the
+// whole event through generateId for every nonce.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PowBenchmark {
+
+  @Param({"32", "1024"})
+  public int contentSize;
+
+  private byte[] publicKey;
+  private JSONArray tags;
+  private String content;
+  private PowMiner miner;
+  private long nonce;
+
+  @Setup
+  public void setup() throws JSONException {
+    publicKey = Utils.pubkeyCreate(Fixtures.privateKey());
+    tags = new JSONArray()
+        .put(new JSONArray().put("p").put(toHexString(Fixtures.randomBytes(32))))
+        .put(new JSONArray().put("t").put("nostr"));
+    content = Fixtures.text(contentSize);
+    miner = new PowMiner(publicKey, 1700000000L, 1, tags, content, 256);
+  }
+
+  @Benchmark
+  public byte[] minerHash() {
+    return miner.hash(nonce++);
+  }
+
+  @Benchmark
+  public byte[] generateId() throws JSONException {
+    JSONArray nonceTags = new JSONArray();
+    for (int i = 0; i < tags.length(); i++) {
+      nonceTags.put(tags.get(i));
+    }
+    nonceTags.put(miner.nonceTag(nonce++));
+    return Utils.generateId(publicKey, 1700000000L, 1, nonceTags, content);
+  }
+}
@@ -0,0 +1,45 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignBenchmark {
+
+  private byte[] privateKey;
+  private byte[] peerPublicKey;
+  private byte[] id;
+
+  @Setup
+  public void setup() {
+    privateKey = Fixtures.privateKey();
+    peerPublicKey = Utils.pubkeyCreate(Fixtures.privateKey());
+    id = Fixtures.randomBytes(32);
+  }
+
+  @Benchmark
+  public byte[] sign() {
+    return Utils.sign(id, privateKey);
+  }
+
+  @Benchmark
+  public byte[] pubkeyCreate() {
+    return Utils.pubkeyCreate(privateKey);
+  }
+
+  @Benchmark
+  public byte[] getSharedSecret() {
+    return Utils.getSharedSecret(privateKey, peerPublicKey);
+  }
+}
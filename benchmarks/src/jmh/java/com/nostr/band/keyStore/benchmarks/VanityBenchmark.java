@@ -0,0 +1,48 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.Bech32;
+import com.nostr.band.keyStore.Utils;
+import com.nostr.band.keyStore.VanitySearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-candidate prefix checks: public key bits against a full npub encode.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VanityBenchmark {
+
+  private static final String PREFIX = "n0str";
+
+  private VanitySearch search;
+  private byte[] publicKey;
+
+  @Setup
+  public void setup() {
+    search = new VanitySearch(PREFIX);
+    publicKey = Utils.pubkeyCreate(Fixtures.privateKey());
+  }
+
+  @Benchmark
+  public boolean matchBits() {
+    return search.matches(publicKey);
+  }
+
+  @Benchmark
+  public boolean matchEncoded() {
+    return Bech32.encodeBytes("npub", publicKey, Bech32.Encoding.Bech32).startsWith("npub1" + PREFIX);
+  }
+
+  @Benchmark
+  public byte[] candidate() {
+    return Utils.pubkeyCreate(Fixtures.randomBytes(32));
+  }
+}
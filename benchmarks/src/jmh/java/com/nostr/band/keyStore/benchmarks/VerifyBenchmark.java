@@ -0,0 +1,60 @@
+package com.nostr.band.keyStore.benchmarks;
+
+import com.nostr.band.keyStore.EventVerifier;
+import com.nostr.band.keyStore.Utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.spongycastle.util.encoders.Hex.toHexString;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VerifyBenchmark {
+
+  private JSONObject event;
+  private EventVerifier verifier;
+
+  @Setup
+  public void setup() throws JSONException {
+    byte[] privateKey = Fixtures.privateKey();
+    byte[] publicKey = Utils.pubkeyCreate(privateKey);
+    JSONArray tags = new JSONArray().put(new JSONArray().put("p").put(toHexString(Fixtures.randomBytes(32))));
+    String content = Fixtures.text(280);
+    long createdAt = 1700000000L;
+    byte[] id = Utils.generateId(publicKey, createdAt, 1, tags, content);
+
+    event = new JSONObject()
+        .put("id", toHexString(id))
+        .put("pubkey", toHexString(publicKey))
+        .put("created_at", createdAt)
+        .put("kind", 1)
+        .put("tags", tags)
+        .put("content", content)
+        .put("sig", toHexString(Utils.sign(id, privateKey)));
+
+    verifier = new EventVerifier(16);
+    verifier.verify(event, true);
+  }
+
+  @Benchmark
+  public boolean verify() {
+    return verifier.verify(event, false);
+  }
+
+  @Benchmark
+  public boolean verifyCached() {
+    return verifier.verify(event, true);
+  }
+}
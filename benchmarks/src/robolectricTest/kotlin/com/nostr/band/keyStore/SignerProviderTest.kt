@@ -0,0 +1,223 @@
+package com.nostr.band.keyStore
+
+import android.content.Context
+import android.database.Cursor
+import android.net.Uri
+import android.os.Bundle
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import org.robolectric.shadows.ShadowBinder
+import org.spongycastle.util.encoders.Hex
+
+// The keys are put into the session directly, so nothing here needs the Android keystore. The
+// plugin's singletons outlive a test, so every test calls in as a package of its own.
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [34], manifest = Config.NONE)
+class SignerProviderTest {
+
+    private lateinit var context: Context
+    private lateinit var provider: SignerProvider
+    private lateinit var approvals: SignerApprovals
+    private lateinit var alice: String
+    private lateinit var bob: String
+    private val requests = ArrayList<Triple<String, String, SignerProvider.Operation>>()
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        provider = Robolectric.setupContentProvider(SignerProvider::class.java, context.packageName + ".SIGN_EVENT")
+        alice = addKey(1)
+        bob = addKey(2)
+        assertTrue(KeyManager.get(context).keyRegistry.select(alice))
+
+        approvals = SignerApprovals.get(context)
+        approvals.listener = SignerApprovals.Listener { packageName, account, operation -> requests.add(Triple(packageName, account, operation)) }
+    }
+
+    @Test
+    fun approvedCallerSignsWithItsAccount() {
+        callAs("com.example.approved")
+        assertTrue(approvals.set("com.example.approved", alice, SignerProvider.Operation.SIGN_EVENT, true))
+
+        val cursor = query(SignerProvider.Operation.SIGN_EVENT, event().toString(), "", alice)
+        assertNotNull(cursor)
+        cursor!!.moveToFirst()
+        val event = JSONObject(cursor.getString(cursor.getColumnIndexOrThrow("event")))
+        assertEquals(alice, event.getString("pubkey"))
+        assertEquals(event.getString("sig"), cursor.getString(cursor.getColumnIndexOrThrow("signature")))
+        assertTrue(EventVerifier(16).verify(event, false))
+        assertTrue(requests.isEmpty())
+    }
+
+    @Test
+    fun approvedCallerGetsCurrentAccountByDefault() {
+        callAs("com.example.current")
+        assertTrue(approvals.set("com.example.current", alice, SignerProvider.Operation.GET_PUBLIC_KEY, true))
+
+        val cursor = query(SignerProvider.Operation.GET_PUBLIC_KEY)
+        assertNotNull(cursor)
+        cursor!!.moveToFirst()
+        assertEquals(alice, cursor.getString(cursor.getColumnIndexOrThrow("result")))
+    }
+
+    @Test
+    fun approvedCallerBatchesThroughCall() {
+        callAs("com.example.batch")
+        assertTrue(approvals.set("com.example.batch", alice, SignerProvider.Operation.NIP44_ENCRYPT, true))
+        assertTrue(approvals.set("com.example.batch", bob, SignerProvider.Operation.NIP44_DECRYPT, true))
+
+        val items = JSONArray()
+                .put(JSONObject().put("data", "hello").put("pubkey", bob))
+                .put("not an object")
+        val encrypted = JSONArray(call(SignerProvider.Operation.NIP44_ENCRYPT, items, alice)!!.getString("results"))
+        assertEquals(2, encrypted.length())
+        assertTrue(encrypted.getJSONObject(1).has("error"))
+
+        val payload = encrypted.getJSONObject(0).getString("result")
+        val decryptItems = JSONArray().put(JSONObject().put("data", payload).put("pubkey", alice))
+        val decrypted = JSONArray(call(SignerProvider.Operation.NIP44_DECRYPT, decryptItems, bob)!!.getString("results"))
+        assertEquals("hello", decrypted.getJSONObject(0).getString("result"))
+    }
+
+    @Test
+    fun callerApprovedForAnotherAccountIsPending() {
+        callAs("com.example.wrongaccount")
+        assertTrue(approvals.set("com.example.wrongaccount", alice, SignerProvider.Operation.SIGN_EVENT, true))
+
+        assertNull(query(SignerProvider.Operation.SIGN_EVENT, event().toString(), "", bob))
+        assertEquals(listOf(Triple("com.example.wrongaccount", bob, SignerProvider.Operation.SIGN_EVENT)), requests)
+
+        val status = approvals.toJSONObject().getJSONObject("com.example.wrongaccount")
+        assertEquals("approved", status.getJSONObject(alice).getJSONObject("SIGN_EVENT").getString("status"))
+        assertEquals("pending", status.getJSONObject(bob).getJSONObject("SIGN_EVENT").getString("status"))
+    }
+
+    @Test
+    fun callerApprovedToSignIsPendingForDecrypt() {
+        callAs("com.example.signonly")
+        assertTrue(approvals.set("com.example.signonly", alice, SignerProvider.Operation.SIGN_EVENT, true))
+        val payload = Nip44.encrypt("secret", Nip44.getConversationKey(privateKey(2), Hex.decode(alice)))
+
+        assertNull(query(SignerProvider.Operation.NIP44_DECRYPT, payload, bob, alice))
+        assertNull(call(SignerProvider.Operation.NIP04_DECRYPT, JSONArray().put(JSONObject().put("data", "x").put("pubkey", bob)), alice))
+        assertEquals(listOf(
+                Triple("com.example.signonly", alice, SignerProvider.Operation.NIP44_DECRYPT),
+                Triple("com.example.signonly", alice, SignerProvider.Operation.NIP04_DECRYPT)
+        ), requests)
+
+        assertTrue(approvals.set("com.example.signonly", alice, SignerProvider.Operation.NIP44_DECRYPT, true))
+        val cursor = query(SignerProvider.Operation.NIP44_DECRYPT, payload, bob, alice)
+        assertNotNull(cursor)
+        cursor!!.moveToFirst()
+        assertEquals("secret", cursor.getString(cursor.getColumnIndexOrThrow("result")))
+    }
+
+    @Test
+    fun pendingCallerGetsNullAndIsReported() {
+        callAs("com.example.pending")
+
+        assertNull(query(SignerProvider.Operation.SIGN_EVENT, event().toString(), "", alice))
+        assertNull(query(SignerProvider.Operation.GET_PUBLIC_KEY))
+        assertNull(call(SignerProvider.Operation.NIP44_ENCRYPT, JSONArray(), alice))
+
+        assertNull(query(SignerProvider.Operation.SIGN_EVENT, event().toString(), "", alice))
+
+        // reported once per operation, not for every retry
+        assertEquals(listOf(
+                Triple("com.example.pending", alice, SignerProvider.Operation.SIGN_EVENT),
+                Triple("com.example.pending", alice, SignerProvider.Operation.GET_PUBLIC_KEY),
+                Triple("com.example.pending", alice, SignerProvider.Operation.NIP44_ENCRYPT)
+        ), requests)
+        val status = approvals.toJSONObject().getJSONObject("com.example.pending").getJSONObject(alice)
+        assertEquals("pending", status.getJSONObject("SIGN_EVENT").getString("status"))
+        assertEquals(2, status.getJSONObject("SIGN_EVENT").getInt("requests"))
+    }
+
+    @Test
+    fun rejectedCallerGetsRejected() {
+        callAs("com.example.rejected")
+        assertTrue(approvals.set("com.example.rejected", alice, SignerProvider.Operation.SIGN_EVENT, false))
+        assertTrue(approvals.set("com.example.rejected", alice, SignerProvider.Operation.NIP44_ENCRYPT, false))
+
+        val cursor = query(SignerProvider.Operation.SIGN_EVENT, event().toString(), "", alice)
+        assertNotNull(cursor)
+        assertTrue(cursor!!.getColumnIndex("rejected") >= 0)
+        assertEquals(-1, cursor.getColumnIndex("event"))
+
+        val bundle = call(SignerProvider.Operation.NIP44_ENCRYPT, JSONArray().put(JSONObject().put("data", "x").put("pubkey", bob)), alice)
+        assertNotNull(bundle)
+        assertTrue(bundle!!.getBoolean("rejected"))
+        assertFalse(bundle.containsKey("results"))
+        assertTrue(requests.isEmpty())
+    }
+
+    @Test
+    fun callerWithoutPackageIsRejected() {
+        ShadowBinder.setCallingUid(UNKNOWN_UID)
+
+        val cursor = query(SignerProvider.Operation.GET_PUBLIC_KEY, "", "", alice)
+        assertNotNull(cursor)
+        assertTrue(cursor!!.getColumnIndex("rejected") >= 0)
+    }
+
+    @Test
+    fun unknownAccountGetsNull() {
+        callAs("com.example.unknownaccount")
+        assertNull(query(SignerProvider.Operation.GET_PUBLIC_KEY, "", "", "00".repeat(32)))
+        assertTrue(requests.isEmpty())
+    }
+
+    private fun addKey(seed: Int): String {
+        val keyManager = KeyManager.get(context)
+        val privateKey = privateKey(seed)
+        val publicKey = Utils.pubkeyCreate(privateKey)
+        val alias = publicKey.toHex()
+        if (!keyManager.keyRegistry.contains(alias)) {
+            assertTrue(keyManager.keyRegistry.add(alias, "key $seed"))
+        }
+        keyManager.keySession.put(UnlockedKey(alias, privateKey, publicKey))
+        return alias
+    }
+
+    private fun privateKey(seed: Int): ByteArray = ByteArray(32).also { it[31] = seed.toByte() }
+
+    private fun callAs(packageName: String) {
+        val uid = FIRST_UID + (packageName.hashCode() and 0xffff)
+        ShadowBinder.setCallingUid(uid)
+        shadowOf(context.packageManager).setPackagesForUid(uid, packageName)
+    }
+
+    private fun event(): JSONObject = JSONObject()
+            .put("kind", 1)
+            .put("created_at", 1700000000L)
+            .put("tags", JSONArray())
+            .put("content", "hello")
+
+    private fun query(operation: SignerProvider.Operation, vararg projection: String): Cursor? =
+            provider.query(Uri.parse("content://" + context.packageName + "." + operation.name), arrayOf(*projection), null, null, null)
+
+    private fun call(operation: SignerProvider.Operation, items: JSONArray, currentUser: String): Bundle? {
+        val extras = Bundle()
+        extras.putString("items", items.toString())
+        extras.putString("current_user", currentUser)
+        return provider.call(operation.name, null, extras)
+    }
+
+    companion object {
+        private const val FIRST_UID = 10_000
+        private const val UNKNOWN_UID = 9_999
+    }
+}
@@ -0,0 +1,29 @@
+package com.nostr.band.keyStore
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+
+// Edge cases of the single-pass decoder that the baseline Array<Int5> decoder accepted or rejected.
+class Bech32Test {
+
+    @Test
+    fun emptyDataPartIsValid() {
+        for (bech32 in listOf("a12uel5l", "A12UEL5L")) {
+            val (hrp, data, encoding) = Bech32.decodeBytes(bech32)
+            assertEquals("a", hrp)
+            assertArrayEquals(ByteArray(0), data)
+            assertEquals(Bech32.Encoding.Bech32, encoding)
+            assertEquals(0, Bech32.decodeBytesInto(bech32, ByteArray(0)))
+        }
+        assertArrayEquals(ByteArray(0), Bech32.decodeBytes("a1", true).second)
+    }
+
+    @Test
+    fun tooShortForChecksumIsInvalid() {
+        for (bech32 in listOf("a1", "a1qqqqq", "1qqqqqq", "a12uel5")) {
+            assertThrows(bech32, IllegalArgumentException::class.java) { Bech32.decodeBytes(bech32) }
+        }
+    }
+}
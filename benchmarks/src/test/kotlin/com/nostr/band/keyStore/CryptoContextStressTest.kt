@@ -0,0 +1,118 @@
+package com.nostr.band.keyStore
+
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+// Ids, NIP-04 round trips and signatures computed on many threads at once have to match what a
+// single thread computes. The contents hit every escaping and encoding branch of EventSerializer,
+// and the long ones cross its buffer, so state leaking between threads shows up as a wrong id.
+class CryptoContextStressTest {
+
+    private class Event(val pubKey: ByteArray, val createdAt: Long, val kind: Int, val tags: JSONArray, val content: String)
+
+    private val contents = listOf(
+            "",
+            "plain ascii",
+            "quote \" backslash \\ slash / tab \t newline \n return \r",
+            "\u0000\u0001\u001f\b\u000c\u007f",
+            "<html> & 'quotes' = not escaped",
+            "line separator   paragraph separator  ",
+            "pizza 🍕 pregnant man 🫃",
+            "lone high \uD83D in the middle",
+            "lone low \uDE00 in the middle",
+            "low before high \uDE00\uD83D",
+            "ends with a lone high \uD83D",
+            "ключ 表ポあA鷗ŒéＢ逍Üßªąñ丂㐀𠀀",
+            " 😀\"".repeat(1500),
+            "ä€🍕a".repeat(2000)
+    )
+
+    private val events = contents.mapIndexed { i, content ->
+        val tags = JSONArray()
+                .put(JSONArray().put("p").put(Utils.pubkeyCreate(privateKey(i + 2)).toHex()))
+                .put(JSONArray().put("t").put(content.take(64)))
+        Event(Utils.pubkeyCreate(privateKey(i + 1)), 1700000000L + i, i, tags, content)
+    }
+
+    @Test
+    fun parallelIdsMatchSingleThreadedIds() {
+        val expected = events.map { generateId(it).toHex() }
+
+        val mismatches = runOnThreads { round ->
+            val failures = ArrayList<String>()
+            for (j in events.indices) {
+                val i = (j + round) % events.size
+                val id = generateId(events[i]).toHex()
+                if (id != expected[i]) {
+                    failures.add("event " + i + ": " + id)
+                }
+            }
+            failures
+        }
+        assertEquals(emptyList<String>(), mismatches)
+    }
+
+    @Test
+    fun parallelEncryptionAndSigningRoundTrip() {
+        val privateKey = privateKey(7)
+        val sharedSecret = Utils.getSharedSecret(privateKey, Utils.pubkeyCreate(privateKey(8)))
+        val publicKey = Utils.pubkeyCreate(privateKey)
+
+        val mismatches = runOnThreads { round ->
+            val failures = ArrayList<String>()
+            for (j in events.indices) {
+                val i = (j + round) % events.size
+                // lone surrogates don't survive UTF-8, compare with what a single thread decodes
+                val content = String(events[i].content.toByteArray())
+                if (Utils.decrypt(Utils.encrypt(content, sharedSecret), sharedSecret) != content) {
+                    failures.add("nip04 " + i)
+                }
+                val id = generateId(events[i])
+                if (!Utils.verify(Utils.sign(id, privateKey), id, publicKey)) {
+                    failures.add("signature " + i)
+                }
+            }
+            failures
+        }
+        assertEquals(emptyList<String>(), mismatches)
+    }
+
+    private fun generateId(event: Event): ByteArray =
+            Utils.generateId(event.pubKey, event.createdAt, event.kind, event.tags, event.content)
+
+    // Starts every thread at once and runs ROUNDS rounds on each, each round starting at another event.
+    private fun runOnThreads(round: (Int) -> List<String>): List<String> {
+        val failures = Collections.synchronizedList(ArrayList<String>())
+        val executor = Executors.newFixedThreadPool(THREADS)
+        val start = CountDownLatch(1)
+        try {
+            val futures = (0 until THREADS).map { thread ->
+                executor.submit {
+                    start.await()
+                    for (r in 0 until ROUNDS) {
+                        failures.addAll(round(thread + r))
+                    }
+                }
+            }
+            start.countDown()
+            futures.forEach { it.get(2, TimeUnit.MINUTES) }
+        } finally {
+            executor.shutdownNow()
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS))
+        return failures
+    }
+
+    private fun privateKey(seed: Int): ByteArray = ByteArray(32).also { it[31] = seed.toByte() }
+
+    companion object {
+        private const val THREADS = 8
+        private const val ROUNDS = 50
+    }
+}
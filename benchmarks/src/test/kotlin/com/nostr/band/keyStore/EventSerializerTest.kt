@@ -0,0 +1,61 @@
+package com.nostr.band.keyStore
+
+import com.google.gson.GsonBuilder
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.security.MessageDigest
+import kotlin.random.Random
+
+// Ids from EventSerializer have to stay byte-for-byte the ids Gson gave before it, for random events
+// whose strings mix control characters, characters Gson escapes, non-BMP characters and lone
+// surrogates, some long enough to cross the serializer's buffer.
+class EventSerializerTest {
+
+    private val gson = GsonBuilder().disableHtmlEscaping().create()
+
+    private val random = Random(42)
+
+    @Test
+    fun idsMatchGson() {
+        for (i in 0 until EVENTS) {
+            val pubKey = random.nextBytes(32)
+            val createdAt = random.nextLong(0, 10_000_000_000L)
+            val kind = random.nextInt(0, 65536)
+            val tags = List(random.nextInt(0, 6)) { List(random.nextInt(1, 5)) { randomString(64) } }
+            val content = randomString(if (i % 10 == 0) 10_000 else 200)
+
+            val expected = gsonId(pubKey, createdAt, kind, tags, content)
+            val jsonTags = JSONArray()
+            tags.forEach { jsonTags.put(JSONArray(it)) }
+            assertEquals("event $i", expected, Utils.generateId(pubKey, createdAt, kind, tags, content).toHex())
+            assertEquals("event $i", expected, Utils.generateId(pubKey, createdAt, kind, jsonTags, content).toHex())
+        }
+    }
+
+    private fun gsonId(pubKey: ByteArray, createdAt: Long, kind: Int, tags: List<List<String>>, content: String): String {
+        val json = gson.toJson(listOf(0, pubKey.toHex(), createdAt, kind, tags, content))
+        return MessageDigest.getInstance("SHA-256").digest(json.toByteArray()).toHex()
+    }
+
+    private fun randomString(maxLength: Int): String {
+        val builder = StringBuilder()
+        val length = random.nextInt(0, maxLength + 1)
+        while (builder.length < length) {
+            when (random.nextInt(8)) {
+                0 -> builder.append(random.nextInt(0, 0x20).toChar())
+                1 -> builder.append("\"\\/<>&='\u007f\u2028\u2029"[random.nextInt(11)])
+                2 -> builder.appendCodePoint(random.nextInt(0x80, 0x800))
+                3 -> builder.appendCodePoint(random.nextInt(0x800, 0xd800))
+                4 -> builder.appendCodePoint(random.nextInt(0x10000, 0x110000))
+                5 -> builder.append(random.nextInt(0xd800, 0xe000).toChar())
+                else -> builder.append(random.nextInt(0x20, 0x7f).toChar())
+            }
+        }
+        return builder.toString()
+    }
+
+    companion object {
+        private const val EVENTS = 2000
+    }
+}
@@ -0,0 +1,74 @@
+package com.nostr.band.keyStore
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class KeySessionTest {
+
+    private val privateKey = ByteArray(32).also { it[31] = 1 }
+
+    private fun unlockedKey(): UnlockedKey {
+        val publicKey = Utils.pubkeyCreate(privateKey)
+        return UnlockedKey(publicKey.toHex(), privateKey.copyOf(), publicKey)
+    }
+
+    @Test
+    fun keepsKeysWhileEnabled() {
+        val session = KeySession(60_000)
+        val key = session.put(unlockedKey())
+        session.releaseUntracked()
+
+        assertSame(key, session.get(key.alias))
+        assertArrayEquals(privateKey, key.copyPrivateKey())
+
+        session.lock()
+        assertNull(session.get(key.alias))
+        assertThrows(IllegalStateException::class.java) { key.copyPrivateKey() }
+    }
+
+    @Test
+    fun wipesKeysOnceReleasedWhileDisabled() {
+        val session = KeySession(0)
+        val key = session.put(unlockedKey())
+
+        assertNull(session.get(key.alias))
+        assertArrayEquals(privateKey, key.copyPrivateKey())
+
+        session.releaseUntracked()
+        assertThrows(IllegalStateException::class.java) { key.copyPrivateKey() }
+    }
+
+    @Test
+    fun lendsKeysThatAreNotKept() {
+        val session = KeySession(60_000)
+        val key = session.put(unlockedKey(), false)
+
+        assertNull(session.get(key.alias))
+        assertArrayEquals(privateKey, key.copyPrivateKey())
+
+        session.releaseUntracked()
+        assertThrows(IllegalStateException::class.java) { key.copyPrivateKey() }
+    }
+
+    @Test
+    fun releasesOnlyTheCallingThreadsKeys() {
+        val session = KeySession(0)
+        val key = session.put(unlockedKey())
+
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            executor.submit { session.releaseUntracked() }.get(10, TimeUnit.SECONDS)
+        } finally {
+            executor.shutdownNow()
+        }
+        assertArrayEquals(privateKey, key.copyPrivateKey())
+
+        session.releaseUntracked()
+        assertThrows(IllegalStateException::class.java) { key.copyPrivateKey() }
+    }
+}
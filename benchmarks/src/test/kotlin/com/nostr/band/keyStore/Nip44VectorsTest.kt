@@ -0,0 +1,89 @@
+package com.nostr.band.keyStore
+
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.spongycastle.util.encoders.Hex
+
+// Runs nip44.vectors.json, laid out like the vectors published with NIP-44 so the upstream file
+// can replace it as is.
+class Nip44VectorsTest {
+
+    private val vectors = JSONObject(javaClass.getResource("/nip44.vectors.json")!!.readText()).getJSONObject("v2")
+    private val valid = vectors.getJSONObject("valid")
+    private val invalid = vectors.getJSONObject("invalid")
+
+    @Test
+    fun conversationKeys() {
+        forEach(valid.getJSONArray("get_conversation_key")) {
+            val conversationKey = Nip44.getConversationKey(Hex.decode(it.getString("sec1")), Hex.decode(it.getString("pub2")))
+            assertEquals(it.optString("note"), it.getString("conversation_key"), conversationKey.toHex())
+        }
+    }
+
+    @Test
+    fun paddedLengths() {
+        val lengths = valid.getJSONArray("calc_padded_len")
+        for (i in 0 until lengths.length()) {
+            val pair = lengths.getJSONArray(i)
+            assertEquals(pair.getInt(1), Nip44.calcPaddedLen(pair.getInt(0)))
+        }
+    }
+
+    @Test
+    fun encryptDecrypt() {
+        forEach(valid.getJSONArray("encrypt_decrypt")) {
+            val sec1 = Hex.decode(it.getString("sec1"))
+            val sec2 = Hex.decode(it.getString("sec2"))
+            val conversationKey = Nip44.getConversationKey(sec1, Utils.pubkeyCreate(sec2))
+            assertEquals(it.getString("conversation_key"), conversationKey.toHex())
+            // both sides agree on the key
+            assertArrayEquals(conversationKey, Nip44.getConversationKey(sec2, Utils.pubkeyCreate(sec1)))
+
+            val plaintext = it.getString("plaintext")
+            val payload = it.getString("payload")
+            assertEquals(payload, Nip44.encrypt(plaintext, conversationKey, Hex.decode(it.getString("nonce"))))
+            assertEquals(plaintext, Nip44.decrypt(payload, conversationKey))
+            assertEquals(plaintext, Nip44.decrypt(Nip44.encrypt(plaintext, conversationKey), conversationKey))
+        }
+    }
+
+    @Test
+    fun invalidConversationKeys() {
+        forEach(invalid.getJSONArray("get_conversation_key")) {
+            val sec1 = Hex.decode(it.getString("sec1"))
+            val pub2 = Hex.decode(it.getString("pub2"))
+            assertThrows(it.optString("note"), Exception::class.java) { Nip44.getConversationKey(sec1, pub2) }
+        }
+    }
+
+    @Test
+    fun invalidMessageLengths() {
+        val conversationKey = ByteArray(32) { 1 }
+        val lengths = invalid.getJSONArray("encrypt_msg_lengths")
+        for (i in 0 until lengths.length()) {
+            val plaintext = "a".repeat(lengths.getInt(i))
+            assertThrows(IllegalArgumentException::class.java) { Nip44.encrypt(plaintext, conversationKey) }
+        }
+    }
+
+    @Test
+    fun invalidPayloads() {
+        forEach(invalid.getJSONArray("decrypt")) {
+            val conversationKey = Hex.decode(it.getString("conversation_key"))
+            val payload = it.getString("payload")
+            assertThrows(it.optString("note"), Exception::class.java) { Nip44.decrypt(payload, conversationKey) }
+        }
+    }
+
+    private fun forEach(array: JSONArray, block: (JSONObject) -> Unit) {
+        assertTrue(array.length() > 0)
+        for (i in 0 until array.length()) {
+            block(array.getJSONObject(i))
+        }
+    }
+}
@@ -9,6 +9,9 @@ typealias Int5 = Byte
 /**
  * Bech32 and Bech32m address formats.
  * See https://github.com/bitcoin/bips/blob/master/bip-0173.mediawiki and https://github.com/bitcoin/bips/blob/master/bip-0350.mediawiki.
+ *
+ * Everything works on primitive arrays: the 8 to 5 bits conversion and the checksum are computed in a single pass,
+ * and strings are built from a per-thread char buffer.
  */
 object Bech32 {
     const val alphabet: String = "qpzry9x8gf2tvdw0s3jn54khce6mua7l"
@@ -19,86 +22,120 @@ object Bech32 {
         Beck32WithoutChecksum(0),
     }
 
-    // char -> 5 bits value
-    private val map = Array<Int5>(255) { -1 }
+    // char -> 5 bits value, -1 for characters outside the alphabet
+    private val map = IntArray(128) { -1 }
 
     init {
         for (i in 0..alphabet.lastIndex) {
-            map[alphabet[i].code] = i.toByte()
+            map[alphabet[i].code] = i
         }
     }
 
+    private val GEN = intArrayOf(0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3)
+
+    private val charBuffers = object : ThreadLocal<CharArray>() {
+        override fun initialValue() = CharArray(128)
+    }
+
     @JvmStatic
     fun encode(hrp: String, int5s: Array<Int5>, encoding: Encoding): String {
-        require(hrp.lowercase() == hrp || hrp.uppercase() == hrp) { "mixed case strings are not valid bech32 prefixes" }
-        val data = int5s.toByteArray().toTypedArray()
-        val checksum = when (encoding) {
-            Encoding.Beck32WithoutChecksum -> arrayOf()
-            else -> checksum(hrp, data, encoding)
+        checkHrp(hrp)
+        val output = charBuffer(hrp.length + 1 + int5s.size + 6)
+        var pos = writeHrp(hrp, output)
+        var chk = hrpChecksum(hrp.length) { hrp[it].code }
+        for (v in int5s) {
+            chk = polymodStep(chk, v.toInt())
+            output[pos++] = alphabet[v.toInt()]
         }
-        return hrp + "1" + (data + checksum).map { i -> alphabet[i.toInt()] }.toCharArray()
-                .concatToString()
+        pos = writeChecksum(chk, encoding, output, pos)
+        return String(output, 0, pos)
     }
 
     @JvmStatic
     fun encodeBytes(hrp: String, data: ByteArray, encoding: Encoding): String =
-            encode(hrp, eight2five(data), encoding)
+            encodeBytes(hrp, data, 0, data.size, encoding)
+
+    @JvmStatic
+    fun encodeBytes(hrp: String, data: ByteArray, offset: Int, length: Int, encoding: Encoding): String {
+        checkHrp(hrp)
+        val output = charBuffer(hrp.length + 1 + (length * 8 + 4) / 5 + 6)
+        var pos = writeHrp(hrp, output)
+        var chk = hrpChecksum(hrp.length) { hrp[it].code }
+        var buffer = 0
+        var count = 0
+        for (i in offset until offset + length) {
+            buffer = ((buffer shl 8) or (data[i].toInt() and 0xff)) and 0xfff
+            count += 8
+            while (count >= 5) {
+                val v = (buffer shr (count - 5)) and 31
+                chk = polymodStep(chk, v)
+                output[pos++] = alphabet[v]
+                count -= 5
+            }
+        }
+        if (count > 0) {
+            val v = (buffer shl (5 - count)) and 31
+            chk = polymodStep(chk, v)
+            output[pos++] = alphabet[v]
+        }
+        pos = writeChecksum(chk, encoding, output, pos)
+        return String(output, 0, pos)
+    }
 
     @JvmStatic
     fun eight2five(input: ByteArray): Array<Int5> {
-        var buffer = 0L
-        val output = ArrayList<Int5>()
+        val output = ByteArray((input.size * 8 + 4) / 5)
+        var buffer = 0
         var count = 0
-        input.forEach { b ->
-            buffer = (buffer shl 8) or (b.toLong() and 0xff)
+        var written = 0
+        for (b in input) {
+            buffer = ((buffer shl 8) or (b.toInt() and 0xff)) and 0xfff
             count += 8
             while (count >= 5) {
-                output.add(((buffer shr (count - 5)) and 31).toByte())
+                output[written++] = ((buffer shr (count - 5)) and 31).toByte()
                 count -= 5
             }
         }
-        if (count > 0) output.add(((buffer shl (5 - count)) and 31).toByte())
+        if (count > 0) output[written] = ((buffer shl (5 - count)) and 31).toByte()
         return output.toTypedArray()
     }
 
-    private fun checksum(hrp: String, data: Array<Int5>, encoding: Encoding): Array<Int5> {
-        val values = expand(hrp) + data
-        val poly = polymod(
-                values,
-                arrayOf(0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(), 0.toByte(), 0.toByte())
-        ) xor encoding.constant
-        return Array(6) { i -> (poly.shr(5 * (5 - i)) and 31).toByte() }
+    private fun checkHrp(hrp: String) {
+        var lower = false
+        var upper = false
+        for (c in hrp) {
+            if (Character.isLowerCase(c)) lower = true
+            if (Character.isUpperCase(c)) upper = true
+        }
+        require(!(lower && upper)) { "mixed case strings are not valid bech32 prefixes" }
     }
 
-
-    private fun expand(hrp: String): Array<Int5> {
-        val result = Array<Int5>(hrp.length + 1 + hrp.length) { 0 }
-        for (i in hrp.indices) {
-            result[i] = hrp[i].code.shr(5).toByte()
-            result[hrp.length + 1 + i] = (hrp[i].code and 31).toByte()
+    private fun charBuffer(size: Int): CharArray {
+        var buffer = charBuffers.get()!!
+        if (buffer.size < size) {
+            buffer = CharArray(size)
+            charBuffers.set(buffer)
         }
-        result[hrp.length] = 0
-        return result
+        return buffer
     }
 
-    private fun polymod(values: Array<Int5>, values1: Array<Int5>): Int {
-        val GEN = arrayOf(0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3)
-        var chk = 1
-        values.forEach { v ->
-            val b = chk shr 25
-            chk = ((chk and 0x1ffffff) shl 5) xor v.toInt()
-            for (i in 0..5) {
-                if (((b shr i) and 1) != 0) chk = chk xor GEN[i]
-            }
+    private fun writeHrp(hrp: String, output: CharArray): Int {
+        hrp.toCharArray(output, 0, 0, hrp.length)
+        output[hrp.length] = '1'
+        return hrp.length + 1
+    }
+
+    private fun writeChecksum(chk: Int, encoding: Encoding, output: CharArray, offset: Int): Int {
+        if (encoding == Encoding.Beck32WithoutChecksum) {
+            return offset
         }
-        values1.forEach { v ->
-            val b = chk shr 25
-            chk = ((chk and 0x1ffffff) shl 5) xor v.toInt()
-            for (i in 0..5) {
-                if (((b shr i) and 1) != 0) chk = chk xor GEN[i]
-            }
+        var poly = chk
+        for (i in 0 until 6) poly = polymodStep(poly, 0)
+        poly = poly xor encoding.constant
+        for (i in 0 until 6) {
+            output[offset + i] = alphabet[(poly shr (5 * (5 - i))) and 31]
         }
-        return chk
+        return offset + 6
     }
 
     /**
@@ -109,23 +146,22 @@ object Bech32 {
      */
     @JvmStatic
     fun decode(bech32: String, noChecksum: Boolean = false): Triple<String, Array<Int5>, Encoding> {
-        require(bech32.lowercase() == bech32 || bech32.uppercase() == bech32) { "mixed case strings are not valid bech32" }
-        bech32.forEach { require(it.code in 33..126) { "invalid character " } }
-        val input = bech32.lowercase()
-        val pos = input.lastIndexOf('1')
-        val hrp = input.take(pos)
-        require(hrp.length in 1..83) { "hrp must contain 1 to 83 characters" }
-        val data = Array<Int5>(input.length - pos - 1) { 0 }
-        for (i in 0..data.lastIndex) data[i] = map[input[pos + 1 + i].code]
+        val pos = checkFormat(bech32.length) { bech32[it].code }
+        var chk = hrpChecksum(pos) { lowercase(bech32[it].code) }
+        val data = ByteArray(bech32.length - pos - 1)
+        for (i in data.indices) {
+            val v = map[lowercase(bech32[pos + 1 + i].code)]
+            require(v >= 0) { "invalid character " }
+            chk = polymodStep(chk, v)
+            data[i] = v.toByte()
+        }
+        val hrp = bech32.substring(0, pos).lowercase()
         return if (noChecksum) {
-            Triple(hrp, data, Encoding.Beck32WithoutChecksum)
+            Triple(hrp, data.toTypedArray(), Encoding.Beck32WithoutChecksum)
         } else {
-            val encoding = when (polymod(expand(hrp), data)) {
-                Encoding.Bech32.constant -> Encoding.Bech32
-                Encoding.Bech32m.constant -> Encoding.Bech32m
-                else -> throw IllegalArgumentException("invalid checksum for $bech32")
-            }
-            Triple(hrp, data.dropLast(6).toTypedArray(), encoding)
+            require(data.size >= 6) { "invalid checksum for $bech32" }
+            val encoding = encodingOf(chk) ?: throw IllegalArgumentException("invalid checksum for $bech32")
+            Triple(hrp, data.copyOf(data.size - 6).toTypedArray(), encoding)
         }
     }
 
@@ -140,8 +176,111 @@ object Bech32 {
             bech32: String,
             noChecksum: Boolean = false
     ): Triple<String, ByteArray, Encoding> {
-        val (hrp, int5s, encoding) = decode(bech32, noChecksum)
-        return Triple(hrp, five2eight(int5s, 0), encoding)
+        val output = ByteArray(bech32.length * 5 / 8)
+        val result = decodeInto(bech32.length, { bech32[it].code }, noChecksum, output)
+        val hrp = bech32.substring(0, bech32.lastIndexOf('1')).lowercase()
+        val encoding = if (noChecksum) Encoding.Beck32WithoutChecksum else encodingOf((result ushr 32).toInt())!!
+        return Triple(hrp, output.copyOf(result.toInt()), encoding)
+    }
+
+    /**
+     * decodes a checksummed bech32 string into a caller-owned buffer
+     * @param bech32 bech32 string
+     * @param output buffer receiving the 8 bits data
+     * @return the number of bytes written to output, the hrp is everything before the last '1'
+     */
+    @JvmStatic
+    fun decodeBytesInto(bech32: String, output: ByteArray): Int =
+            decodeInto(bech32.length, { bech32[it].code }, false, output).toInt()
+
+    /**
+     * decodes a bech32 string given as ascii bytes straight into a caller-owned buffer, so secret
+     * keys don't leave copies behind in intermediate arrays or strings
+     * @param bech32 bech32 string as ascii bytes
+     * @param hrp expected human readable part, lower case
+     * @param output buffer receiving the 8 bits data
+     * @return the number of bytes written to output
+     */
+    @JvmStatic
+    fun decodeBytesInto(bech32: ByteArray, hrp: String, output: ByteArray): Int {
+        val pos = hrp.length
+        require(bech32.size > pos + 6 && bech32[pos] == '1'.code.toByte()) { "invalid bech32 string" }
+        for (i in 0 until pos) {
+            require(lowercase(bech32[i].toInt()) == hrp[i].code) { "unexpected hrp" }
+        }
+        return decodeInto(bech32.size, { bech32[it].toInt() }, false, output).toInt()
+    }
+
+    // Returns the number of bytes written to output in the low half and the checksum residue in the high half.
+    private inline fun decodeInto(length: Int, charAt: (Int) -> Int, noChecksum: Boolean, output: ByteArray): Long {
+        val pos = checkFormat(length, charAt)
+        var chk = hrpChecksum(pos) { lowercase(charAt(it)) }
+        // Too short for a checksum fails the checksum check, an empty data part is valid.
+        val dataEnd = if (noChecksum) length else length - 6
+
+        var buffer = 0
+        var count = 0
+        var written = 0
+        for (i in pos + 1 until length) {
+            val v = map[lowercase(charAt(i))]
+            require(v >= 0) { "invalid character " }
+            chk = polymodStep(chk, v)
+            if (i < dataEnd) {
+                buffer = ((buffer shl 5) or v) and 0xfff
+                count += 5
+                if (count >= 8) {
+                    require(written < output.size) { "output buffer is too small" }
+                    output[written++] = (buffer shr (count - 8)).toByte()
+                    count -= 8
+                }
+            }
+        }
+        require(noChecksum || encodingOf(chk) != null) { "invalid checksum" }
+        require(count <= 4) { "Zero-padding of more than 4 bits" }
+        require((buffer and ((1 shl count) - 1)) == 0) { "Non-zero padding in 8-to-5 conversion" }
+        return (chk.toLong() shl 32) or written.toLong()
+    }
+
+    // Checks the character set and case, returns the position of the separator.
+    private inline fun checkFormat(length: Int, charAt: (Int) -> Int): Int {
+        var lower = false
+        var upper = false
+        var pos = -1
+        for (i in 0 until length) {
+            val c = charAt(i)
+            require(c in 33..126) { "invalid character " }
+            if (c in 'a'.code..'z'.code) lower = true
+            if (c in 'A'.code..'Z'.code) upper = true
+            if (c == '1'.code) pos = i
+        }
+        require(!(lower && upper)) { "mixed case strings are not valid bech32" }
+        require(pos in 1..83) { "hrp must contain 1 to 83 characters" }
+        return pos
+    }
+
+    private inline fun hrpChecksum(length: Int, charAt: (Int) -> Int): Int {
+        var chk = 1
+        for (i in 0 until length) chk = polymodStep(chk, charAt(i) shr 5)
+        chk = polymodStep(chk, 0)
+        for (i in 0 until length) chk = polymodStep(chk, charAt(i) and 31)
+        return chk
+    }
+
+    private fun encodingOf(chk: Int): Encoding? = when (chk) {
+        Encoding.Bech32.constant -> Encoding.Bech32
+        Encoding.Bech32m.constant -> Encoding.Bech32m
+        else -> null
+    }
+
+    private fun lowercase(c: Int): Int = if (c in 'A'.code..'Z'.code) c + 32 else c
+
+    private fun polymodStep(chk: Int, v: Int): Int {
+        val b = chk shr 25
+        var result = ((chk and 0x1ffffff) shl 5) xor v
+        for (i in 0..4) {
+            if (((b shr i) and 1) != 0) result = result xor GEN[i]
+        }
+        return result
     }
 
     /**
@@ -150,21 +289,21 @@ object Bech32 {
      */
     @JvmStatic
     fun five2eight(input: Array<Int5>, offset: Int): ByteArray {
-        var buffer = 0L
-        val output = ArrayList<Byte>()
+        val output = ByteArray(maxOf(0, (input.size - offset) * 5 / 8))
+        var buffer = 0
         var count = 0
+        var written = 0
         for (i in offset..input.lastIndex) {
-            val b = input[i]
-            buffer = (buffer shl 5) or (b.toLong() and 31)
+            buffer = ((buffer shl 5) or (input[i].toInt() and 31)) and 0xfff
             count += 5
-            while (count >= 8) {
-                output.add(((buffer shr (count - 8)) and 0xff).toByte())
+            if (count >= 8) {
+                output[written++] = (buffer shr (count - 8)).toByte()
                 count -= 8
             }
         }
         require(count <= 4) { "Zero-padding of more than 4 bits" }
-        require((buffer and ((1L shl count) - 1L)) == 0L) { "Non-zero padding in 8-to-5 conversion" }
-        return output.toByteArray()
+        require((buffer and ((1 shl count) - 1)) == 0) { "Non-zero padding in 8-to-5 conversion" }
+        return output
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.nostr.band.keyStore;
+
+import org.spongycastle.crypto.engines.ChaCha7539Engine
+import java.security.MessageDigest
+import javax.crypto.Cipher
+import javax.crypto.Mac
+
+// Per-thread crypto state. MessageDigest and Cipher instances are not thread-safe and looking them
+// up through the providers is costly, so every thread doing crypto keeps and reuses its own set.
+// The secp256k1 handle needs no copy: its native context is read-only and safe to share.
+class CryptoContext private constructor() {
+
+    val sha256: MessageDigest = MessageDigest.getInstance("SHA-256")
+
+    val serializer = EventSerializer(sha256)
+
+    val aesCbc: Cipher = Cipher.getInstance("AES/CBC/PKCS5Padding")
+
+    val hmacSha256: Mac = Mac.getInstance("HmacSHA256")
+
+    val chacha20 = ChaCha7539Engine()
+
+    companion object {
+        private val contexts = object : ThreadLocal<CryptoContext>() {
+            override fun initialValue() = CryptoContext()
+        }
+
+        @JvmStatic
+        fun get(): CryptoContext = contexts.get()!!
+    }
+}
@@ -0,0 +1,167 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONArray
+import java.security.MessageDigest
+
+/**
+ * Writes the NIP-01 serialization of an event, [0,<pubkey>,<created_at>,<kind>,<tags>,<content>],
+ * as UTF-8 straight into a digest. Escaping follows Gson with html escaping disabled, which is what
+ * event ids were computed with before, so ids stay byte-for-byte the same.
+ */
+class EventSerializer(private val digest: MessageDigest) {
+
+    private val buffer = ByteArray(BUFFER_SIZE)
+    private var size = 0
+
+    fun writeEvent(pubKey: ByteArray, createdAt: Long, kind: Int, tags: List<List<String>>, content: String) {
+        writeHeader(pubKey, createdAt, kind)
+        writeByte('['.code)
+        for (i in tags.indices) {
+            if (i > 0) writeByte(','.code)
+            writeTag(tags[i])
+        }
+        writeByte(']'.code)
+        writeFooter(content)
+    }
+
+    fun writeEvent(pubKey: ByteArray, createdAt: Long, kind: Int, tags: JSONArray, content: String) {
+        writeHeader(pubKey, createdAt, kind)
+        writeByte('['.code)
+        for (i in 0 until tags.length()) {
+            if (i > 0) writeByte(','.code)
+            writeTag(tags.getJSONArray(i))
+        }
+        writeByte(']'.code)
+        writeFooter(content)
+    }
+
+    fun writeHeader(pubKey: ByteArray, createdAt: Long, kind: Int) {
+        writeAscii("[0,\"")
+        for (b in pubKey) {
+            writeByte(HEX[(b.toInt() shr 4) and 0x0f].code)
+            writeByte(HEX[b.toInt() and 0x0f].code)
+        }
+        writeAscii("\",")
+        writeAscii(createdAt.toString())
+        writeByte(','.code)
+        writeAscii(kind.toString())
+        writeByte(','.code)
+    }
+
+    fun writeTag(tag: List<String>) {
+        writeByte('['.code)
+        for (j in tag.indices) {
+            if (j > 0) writeByte(','.code)
+            writeString(tag[j])
+        }
+        writeByte(']'.code)
+    }
+
+    fun writeTag(tag: JSONArray) {
+        writeByte('['.code)
+        for (j in 0 until tag.length()) {
+            if (j > 0) writeByte(','.code)
+            writeString(tag.getString(j))
+        }
+        writeByte(']'.code)
+    }
+
+    fun writeFooter(content: String) {
+        writeByte(','.code)
+        writeString(content)
+        writeByte(']'.code)
+    }
+
+    fun writeString(value: String) {
+        writeByte('"'.code)
+        writeEscaped(value)
+        writeByte('"'.code)
+    }
+
+    // String contents with Gson's escaping, encoded the way String.toByteArray() does it,
+    // unpaired surrogates included.
+    fun writeEscaped(value: String) {
+        var i = 0
+        val length = value.length
+        while (i < length) {
+            val c = value[i].code
+            when {
+                c < 0x80 -> {
+                    val replacement = ESCAPES[c]
+                    if (replacement == null) writeByte(c) else writeAscii(replacement)
+                }
+                c < 0x800 -> {
+                    writeByte(0xc0 or (c shr 6))
+                    writeByte(0x80 or (c and 0x3f))
+                }
+                c == 0x2028 -> writeAscii("\\u2028")
+                c == 0x2029 -> writeAscii("\\u2029")
+                Character.isHighSurrogate(value[i]) -> {
+                    if (i + 1 < length && Character.isLowSurrogate(value[i + 1])) {
+                        val codePoint = Character.toCodePoint(value[i], value[i + 1])
+                        writeByte(0xf0 or (codePoint shr 18))
+                        writeByte(0x80 or ((codePoint shr 12) and 0x3f))
+                        writeByte(0x80 or ((codePoint shr 6) and 0x3f))
+                        writeByte(0x80 or (codePoint and 0x3f))
+                        i++
+                    } else {
+                        writeByte('?'.code)
+                    }
+                }
+                Character.isLowSurrogate(value[i]) -> writeByte('?'.code)
+                else -> {
+                    writeByte(0xe0 or (c shr 12))
+                    writeByte(0x80 or ((c shr 6) and 0x3f))
+                    writeByte(0x80 or (c and 0x3f))
+                }
+            }
+            i++
+        }
+    }
+
+    fun writeAscii(value: String) {
+        for (i in value.indices) {
+            writeByte(value[i].code)
+        }
+    }
+
+    fun writeByte(b: Int) {
+        if (size == buffer.size) {
+            flush()
+        }
+        buffer[size++] = b.toByte()
+    }
+
+    fun reset() {
+        size = 0
+        digest.reset()
+    }
+
+    fun flush() {
+        digest.update(buffer, 0, size)
+        size = 0
+    }
+
+    fun digest(): ByteArray {
+        flush()
+        return digest.digest()
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 4096
+        private const val HEX = "0123456789abcdef"
+
+        private val ESCAPES = arrayOfNulls<String>(128).also {
+            for (c in 0..0x1f) {
+                it[c] = String.format("\\u%04x", c)
+            }
+            it['"'.code] = "\\\""
+            it['\\'.code] = "\\\\"
+            it['\t'.code] = "\\t"
+            it['\b'.code] = "\\b"
+            it['\n'.code] = "\\n"
+            it['\r'.code] = "\\r"
+            it['\u000c'.code] = "\\f"
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONException
+import org.json.JSONObject
+import org.spongycastle.util.encoders.Hex
+import java.security.MessageDigest
+
+// Checks that an event id is the hash of its NIP-01 serialization and that the signature is a
+// valid Schnorr signature of that id by the pubkey. Ids that passed are remembered with their
+// signature, so copies of an event coming from several relays only cost the hash.
+class EventVerifier(private val capacity: Int) {
+
+    private val verified = object : LinkedHashMap<String, String>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>): Boolean = size > capacity
+    }
+
+    private var hits = 0L
+    private var misses = 0L
+
+    fun verify(event: JSONObject?, useCache: Boolean): Boolean {
+        if (event == null) {
+            return false
+        }
+        val id = event.optString("id")
+        val pubkey = event.optString("pubkey")
+        val sig = event.optString("sig")
+        if (id.length != 64 || pubkey.length != 64 || sig.length != 128) {
+            return false
+        }
+
+        try {
+            val pubkeyBytes = Hex.decode(pubkey)
+            val computedId = Utils.generateId(
+                    pubkeyBytes,
+                    event.getLong("created_at"),
+                    event.getInt("kind"),
+                    event.getJSONArray("tags"),
+                    event.getString("content")
+            )
+            if (!MessageDigest.isEqual(computedId, Hex.decode(id))) {
+                return false
+            }
+
+            if (useCache) {
+                synchronized(this) {
+                    if (verified[id] == sig) {
+                        hits++
+                        return true
+                    }
+                    misses++
+                }
+            }
+
+            val valid = Utils.verify(Hex.decode(sig), computedId, pubkeyBytes)
+            if (valid && useCache) {
+                synchronized(this) {
+                    verified[id] = sig
+                }
+            }
+            return valid
+        } catch (e: JSONException) {
+            return false
+        } catch (e: RuntimeException) {
+            // bad hex or a pubkey that is not on the curve
+            return false
+        }
+    }
+
+    @Synchronized
+    @Throws(JSONException::class)
+    fun getStats(): JSONObject {
+        val requests = hits + misses
+        val stats = JSONObject()
+        stats.put("size", verified.size)
+        stats.put("capacity", capacity)
+        stats.put("hits", hits)
+        stats.put("misses", misses)
+        stats.put("hitRate", if (requests > 0) hits.toDouble() / requests else 0.0)
+        return stats
+    }
+
+    companion object {
+        // One bit per event, event i is bit (i % 8) of byte (i / 8).
+        @JvmStatic
+        fun toBitmap(results: BooleanArray): ByteArray {
+            val bitmap = ByteArray((results.size + 7) / 8)
+            for (i in results.indices) {
+                if (results[i]) {
+                    bitmap[i shr 3] = (bitmap[i shr 3].toInt() or (1 shl (i and 7))).toByte()
+                }
+            }
+            return bitmap
+        }
+    }
+}
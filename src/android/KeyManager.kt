@@ -0,0 +1,341 @@
+package com.nostr.band.keyStore;
+
+import android.content.Context
+import android.util.Log
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+import java.security.GeneralSecurityException
+import java.security.KeyStore
+
+// Process-wide access to the stored keys: unlocking, wrapping, signing and the in-memory session
+// and secret caches. The plugin and SignerProvider share it, so a key unlocked by one is unlocked
+// for the other and locking goes for both.
+class KeyManager private constructor(private val context: Context) {
+
+    val keyRegistry: KeyRegistry = KeyRegistry.get(context)
+
+    val keySession = KeySession(DEFAULT_SESSION_TIMEOUT)
+
+    val sharedSecretCache = SecretCache(SECRET_CACHE_SIZE)
+
+    val conversationKeyCache = SecretCache(SECRET_CACHE_SIZE)
+
+    @Volatile
+    private var keyStoreProvider: String? = null
+
+    @Volatile
+    private var loadedKeyStore: KeyStore? = null
+
+    @Volatile
+    private var keyWrapper: KeyWrapper? = null
+
+    // Requests may name the key to use by its public key, the current key is used otherwise.
+    // Picking a key this way doesn't change the current one. A key unlocked with keep false isn't
+    // kept in the session, the calling thread wipes it with KeySession.releaseUntracked().
+    @JvmOverloads
+    fun unlockKey(requestedAlias: String?, keep: Boolean = true): UnlockedKey? {
+        val alias = if (requestedAlias.isNullOrEmpty()) keyRegistry.getCurrentAlias() else requestedAlias
+        if (alias.isEmpty() || !keyRegistry.contains(alias)) {
+            return null
+        }
+
+        keySession.get(alias)?.let {
+            Metrics.count("session.hit")
+            return it
+        }
+        Metrics.count("session.miss")
+
+        val storedValues = KeyStorage.readValues(context, alias)
+        val encodedPrivateKey = unwrap(alias, storedValues)
+        if (encodedPrivateKey.isEmpty()) {
+            return null
+        }
+
+        // Secrets still wrapped with the old RSA scheme are rewrapped once they unlock successfully.
+        val migratedPrivateKey = if (isMigrationNeeded(storedValues)) encodedPrivateKey.copyOf() else null
+
+        val privateKey = decodePrivateKey(encodedPrivateKey)
+        if (privateKey == null) {
+            migratedPrivateKey?.fill(0)
+            return null
+        }
+
+        // The stored secret has to match the public key it is registered under.
+        val publicKey = Utils.pubkeyCreate(privateKey)
+        if (alias != publicKey.toHex()) {
+            Log.e(TAG, "Exception: stored key doesn't match its public key")
+            privateKey.fill(0)
+            migratedPrivateKey?.fill(0)
+            return null
+        }
+
+        if (migratedPrivateKey != null) {
+            migratePrivateKey(alias, migratedPrivateKey)
+        }
+
+        return keySession.put(UnlockedKey(alias, privateKey, publicKey), keep)
+    }
+
+    // Returns the stored nsec as ascii bytes, empty when there is none. Callers wipe it once done.
+    fun readEncodedPrivateKey(alias: String): ByteArray = unwrap(alias, KeyStorage.readValues(context, alias))
+
+    fun savePrivateKey(alias: String, input: String): Boolean {
+        if (input.isEmpty()) {
+            Log.d(TAG, "Exception: input text is empty")
+            return false
+        }
+
+        val encodedPrivateKey = input.toByteArray()
+        try {
+            if (!KeyStorage.writeValues(context, alias, getKeyWrapper().wrap(alias, encodedPrivateKey))) {
+                return false
+            }
+            Log.i(TAG, "key created and stored successfully")
+            return true
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+            return false
+        } finally {
+            encodedPrivateKey.fill(0)
+        }
+    }
+
+    // The key leaves the metadata before its secret is removed, returns false when either
+    // couldn't be written. A secret whose removal failed goes with the next vault write.
+    fun deleteKey(alias: String): Boolean {
+        if (!keyRegistry.remove(alias)) {
+            return false
+        }
+        val removed = KeyStorage.removeValues(context, alias)
+        try {
+            getKeyWrapper().delete(alias)
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+        lock()
+        return removed
+    }
+
+    fun lock() {
+        keySession.lock()
+        sharedSecretCache.clear()
+        conversationKeyCache.clear()
+    }
+
+    fun generateId(publicKey: ByteArray, event: JSONObject): ByteArray {
+        val start = Metrics.beginStage("generateId")
+        try {
+            return Utils.generateId(publicKey, event.getLong("created_at"), event.getInt("kind"), event.getJSONArray("tags"), event.getString("content"))
+        } finally {
+            Metrics.endStage("generateId", start)
+        }
+    }
+
+    fun sign(id: ByteArray, privateKey: ByteArray): ByteArray {
+        val start = Metrics.beginStage("sign")
+        try {
+            return Utils.sign(id, privateKey)
+        } finally {
+            Metrics.endStage("sign", start)
+        }
+    }
+
+    // Fills in id, pubkey and sig. privateKey is the caller's copy of the unlocked key, so a batch
+    // copies it once.
+    @Throws(JSONException::class)
+    fun signEvent(event: JSONObject, unlockedKey: UnlockedKey, privateKey: ByteArray): JSONObject {
+        val id = generateId(unlockedKey.publicKey, event)
+        val sig = sign(id, privateKey)
+        event.put("id", id.toHex())
+        event.put("pubkey", unlockedKey.publicKeyHex)
+        event.put("sig", sig.toHex())
+        return event
+    }
+
+    // Both return a copy of the cached secret, callers wipe it once done.
+    fun getSharedSecret(unlockedKey: UnlockedKey, publicKey: ByteArray): ByteArray {
+        return sharedSecretCache.get(unlockedKey.alias, publicKey) {
+            val privateKey = unlockedKey.copyPrivateKey()
+            try {
+                computeSharedSecret(privateKey, publicKey)
+            } finally {
+                privateKey.fill(0)
+            }
+        }
+    }
+
+    fun getConversationKey(unlockedKey: UnlockedKey, publicKey: ByteArray): ByteArray {
+        return conversationKeyCache.get(unlockedKey.alias, publicKey) {
+            val sharedSecret = getSharedSecret(unlockedKey, publicKey)
+            try {
+                Nip44.getConversationKey(sharedSecret)
+            } finally {
+                sharedSecret.fill(0)
+            }
+        }
+    }
+
+    // Variants for tasks that fan out: privateKey is the copy the dispatching thread took of the
+    // key unlocked for alias, the caller wipes it once every task is done.
+    fun getSharedSecret(alias: String, privateKey: ByteArray, publicKey: ByteArray): ByteArray {
+        return sharedSecretCache.get(alias, publicKey) { computeSharedSecret(privateKey, publicKey) }
+    }
+
+    fun getConversationKey(alias: String, privateKey: ByteArray, publicKey: ByteArray): ByteArray {
+        return conversationKeyCache.get(alias, publicKey) {
+            val sharedSecret = getSharedSecret(alias, privateKey, publicKey)
+            try {
+                Nip44.getConversationKey(sharedSecret)
+            } finally {
+                sharedSecret.fill(0)
+            }
+        }
+    }
+
+    // Pays the one-time costs of the first key operation ahead of time: the secp256k1 native
+    // library, the keystore provider lookup and load, the JCE cipher lookup and the key metadata.
+    fun prewarm() {
+        val start = System.nanoTime()
+        try {
+            val privateKey = ByteArray(32)
+            privateKey[31] = 1
+            Utils.pubkeyCreate(privateKey)
+            val secp256k1 = System.nanoTime()
+
+            getLoadedKeyStore()
+            val keyStore = System.nanoTime()
+
+            getKeyWrapper().prewarm()
+            val cipher = System.nanoTime()
+
+            keyRegistry.getCurrentAlias()
+            val registry = System.nanoTime()
+
+            Log.i(TAG, "prewarm: secp256k1 " + (secp256k1 - start) / 1000 + "us, keystore " + (keyStore - secp256k1) / 1000 +
+                    "us, cipher " + (cipher - keyStore) / 1000 + "us, registry " + (registry - cipher) / 1000 + "us")
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+    }
+
+    private fun computeSharedSecret(privateKey: ByteArray, publicKey: ByteArray): ByteArray {
+        val start = Metrics.beginStage("sharedSecret")
+        try {
+            return Utils.getSharedSecret(privateKey, publicKey)
+        } finally {
+            Metrics.endStage("sharedSecret", start)
+        }
+    }
+
+    private fun unwrap(alias: String, storedValues: ByteArray): ByteArray {
+        val start = Metrics.beginStage("unwrapKey")
+        return try {
+            getKeyWrapper().unwrap(alias, storedValues)
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+            ByteArray(0)
+        } finally {
+            Metrics.endStage("unwrapKey", start)
+        }
+    }
+
+    private fun decodePrivateKey(encodedPrivateKey: ByteArray): ByteArray? {
+        val privateKey = ByteArray(32)
+        try {
+            if (Bech32.decodeBytesInto(encodedPrivateKey, "nsec", privateKey) == privateKey.size) {
+                return privateKey
+            }
+        } catch (e: IllegalArgumentException) {
+            Log.e(TAG, "Exception: " + e.message)
+        } finally {
+            encodedPrivateKey.fill(0)
+        }
+        privateKey.fill(0)
+        return null
+    }
+
+    private fun isMigrationNeeded(storedValues: ByteArray): Boolean {
+        return try {
+            getKeyWrapper().isMigrationNeeded(storedValues)
+        } catch (e: Exception) {
+            false
+        }
+    }
+
+    private fun migratePrivateKey(alias: String, encodedPrivateKey: ByteArray) {
+        try {
+            val start = System.nanoTime()
+            // The legacy key stays until the rewrapped secret is on disk, the next unlock retries.
+            if (!KeyStorage.writeValues(context, alias, getKeyWrapper().wrap(alias, encodedPrivateKey))) {
+                Log.e(TAG, "Exception: migrated key couldn't be written")
+                return
+            }
+            getKeyWrapper().deleteLegacyKey(alias)
+            Log.i(TAG, "key migrated to AES-GCM wrapping in " + (System.nanoTime() - start) / 1000 + "us")
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+        } finally {
+            encodedPrivateKey.fill(0)
+        }
+    }
+
+    private fun getKeyStoreProvider(): String {
+        return keyStoreProvider ?: findKeyStoreProvider().also { keyStoreProvider = it }
+    }
+
+    private fun findKeyStoreProvider(): String {
+        for (provider in KEYSTORE_PROVIDERS) {
+            try {
+                KeyStore.getInstance(provider)
+                return provider
+            } catch (e: Exception) {
+                // try the next one
+            }
+        }
+        return FALLBACK_KEYSTORE_PROVIDER
+    }
+
+    // Loaded once, the Android keystore reads entries from the keystore service on every call anyway.
+    @Throws(GeneralSecurityException::class, IOException::class)
+    private fun getLoadedKeyStore(): KeyStore {
+        return loadedKeyStore ?: synchronized(this) {
+            loadedKeyStore ?: run {
+                val start = Metrics.beginStage("loadKeyStore")
+                try {
+                    KeyStore.getInstance(getKeyStoreProvider()).also {
+                        it.load(null)
+                        loadedKeyStore = it
+                    }
+                } finally {
+                    Metrics.endStage("loadKeyStore", start)
+                }
+            }
+        }
+    }
+
+    @Throws(GeneralSecurityException::class, IOException::class)
+    private fun getKeyWrapper(): KeyWrapper {
+        return keyWrapper ?: synchronized(this) {
+            keyWrapper ?: KeyWrapper(context, getLoadedKeyStore(), getKeyStoreProvider()).also { keyWrapper = it }
+        }
+    }
+
+    companion object {
+        private const val TAG = "NostrLogTag"
+        private const val DEFAULT_SESSION_TIMEOUT = 300_000L
+        private const val SECRET_CACHE_SIZE = 512
+        private val KEYSTORE_PROVIDERS = arrayOf("AndroidKeyStore", "AndroidKeyStoreBCWorkaround")
+        private const val FALLBACK_KEYSTORE_PROVIDER = "AndroidOpenSSL"
+
+        @Volatile
+        private var instance: KeyManager? = null
+
+        @JvmStatic
+        fun get(context: Context): KeyManager {
+            return instance ?: synchronized(this) {
+                instance ?: KeyManager(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.nostr.band.keyStore;
+
+import android.content.Context
+import android.util.Log
+import org.json.JSONException
+import org.json.JSONObject
+
+class KeyEntry(val publicKey: String, var name: String, var isCurrent: Boolean)
+
+// In-memory copy of the nostrKeys metadata. It is read from disk once and lookups by public key
+// and by name are map hits. Every change is written before it returns and rolled back when the
+// write fails, so the metadata never disagrees with the stored secrets or what callers were told.
+class KeyRegistry private constructor(private val context: Context) {
+
+    private val keys = LinkedHashMap<String, KeyEntry>()
+
+    // name -> number of keys using it
+    private val names = HashMap<String, Int>()
+
+    private var currentAlias: String? = null
+
+    private var loaded = false
+
+    // Bumped by every change, writtenVersion is the last one on disk.
+    private var version = 0L
+
+    private var writtenVersion = 0L
+
+    private val writeLock = Any()
+
+    @Synchronized
+    fun getCurrentAlias(): String {
+        ensureLoaded()
+        return currentAlias ?: ""
+    }
+
+    @Synchronized
+    fun contains(publicKey: String): Boolean {
+        ensureLoaded()
+        return keys.containsKey(publicKey)
+    }
+
+    @Synchronized
+    fun existsName(publicKey: String, name: String): Boolean {
+        ensureLoaded()
+        val count = names[name] ?: 0
+        return count > (if (keys[publicKey]?.name == name) 1 else 0)
+    }
+
+    // Returns false when the metadata couldn't be written, the key isn't added then.
+    fun add(publicKey: String, name: String): Boolean {
+        val previousAlias: String?
+        synchronized(this) {
+            ensureLoaded()
+            previousAlias = currentAlias
+            keys.values.forEach { it.isCurrent = false }
+            keys[publicKey]?.let { unindexName(it.name) }
+            keys[publicKey] = KeyEntry(publicKey, name, true)
+            indexName(name)
+            currentAlias = publicKey
+            version++
+        }
+        if (write()) {
+            return true
+        }
+
+        synchronized(this) {
+            keys.remove(publicKey)?.let { unindexName(it.name) }
+            currentAlias = previousAlias
+            previousAlias?.let { keys[it]?.isCurrent = true }
+            version++
+        }
+        return false
+    }
+
+    // Returns false when the metadata couldn't be written, the current key stays then.
+    fun select(publicKey: String): Boolean {
+        val previousAlias: String?
+        synchronized(this) {
+            ensureLoaded()
+            previousAlias = currentAlias
+            currentAlias = publicKey
+            version++
+        }
+        if (write()) {
+            return true
+        }
+
+        synchronized(this) {
+            currentAlias = previousAlias
+            version++
+        }
+        return false
+    }
+
+    // Returns false when the metadata couldn't be written, the name stays then.
+    fun rename(publicKey: String, name: String): Boolean {
+        val entry: KeyEntry
+        val previousName: String
+        synchronized(this) {
+            ensureLoaded()
+            entry = keys[publicKey] ?: return true
+            previousName = entry.name
+            unindexName(entry.name)
+            entry.name = name
+            indexName(name)
+            version++
+        }
+        if (write()) {
+            return true
+        }
+
+        synchronized(this) {
+            unindexName(entry.name)
+            entry.name = previousName
+            indexName(previousName)
+            version++
+        }
+        return false
+    }
+
+    // Returns false when the metadata couldn't be written, the key stays registered then.
+    fun remove(publicKey: String): Boolean {
+        val entry: KeyEntry
+        val previousAlias: String?
+        synchronized(this) {
+            ensureLoaded()
+            entry = keys.remove(publicKey) ?: return true
+            unindexName(entry.name)
+            previousAlias = currentAlias
+            if (currentAlias == publicKey) {
+                currentAlias = ""
+            }
+            version++
+        }
+        if (write()) {
+            return true
+        }
+
+        synchronized(this) {
+            keys[publicKey] = entry
+            indexName(entry.name)
+            currentAlias = previousAlias
+            version++
+        }
+        return false
+    }
+
+    @Synchronized
+    @Throws(JSONException::class)
+    fun toJSONObject(): JSONObject {
+        ensureLoaded()
+        val result = JSONObject()
+        currentAlias?.let { result.put(CURRENT_ALIAS, it) }
+        for (entry in keys.values) {
+            val key = JSONObject()
+            key.put("name", entry.name)
+            key.put("publicKey", entry.publicKey)
+            key.put("isCurrent", entry.isCurrent)
+            result.put(entry.publicKey, key)
+        }
+        return result
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+
+        val start = Metrics.beginStage("loadKeys")
+        try {
+            load()
+        } finally {
+            Metrics.endStage("loadKeys", start)
+        }
+    }
+
+    private fun load() {
+        val data = String(KeyStorage.readValues(context, KEYS_ALIAS))
+        if (data.isEmpty()) {
+            return
+        }
+        try {
+            val json = JSONObject(data)
+            val iterator = json.keys()
+            while (iterator.hasNext()) {
+                val name = iterator.next()
+                if (name == CURRENT_ALIAS) {
+                    currentAlias = json.getString(name)
+                    continue
+                }
+                val key = json.optJSONObject(name) ?: continue
+                val entry = KeyEntry(name, key.optString("name"), key.optBoolean("isCurrent"))
+                keys[name] = entry
+                indexName(entry.name)
+            }
+        } catch (e: JSONException) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+    }
+
+    private fun indexName(name: String) {
+        names[name] = (names[name] ?: 0) + 1
+    }
+
+    private fun unindexName(name: String) {
+        val count = (names[name] ?: 0) - 1
+        if (count > 0) names[name] = count else names.remove(name)
+    }
+
+    // Writes are serialized and each takes its snapshot once it holds the write lock, so an older
+    // snapshot never lands on disk after a newer one.
+    private fun write(): Boolean {
+        synchronized(writeLock) {
+            val values: ByteArray
+            val snapshotVersion: Long
+            synchronized(this) {
+                snapshotVersion = version
+                if (snapshotVersion == writtenVersion) {
+                    return true
+                }
+                values = try {
+                    toJSONObject().toString().toByteArray()
+                } catch (e: JSONException) {
+                    Log.e(TAG, "Exception: " + e.message)
+                    return false
+                }
+            }
+            if (!KeyStorage.writeValues(context, KEYS_ALIAS, values)) {
+                return false
+            }
+            writtenVersion = snapshotVersion
+            return true
+        }
+    }
+
+    companion object {
+        private const val CURRENT_ALIAS = "currentAlias"
+        private const val KEYS_ALIAS = "nostrKeys"
+        private const val TAG = "KeyRegistryLogTag"
+
+        @Volatile
+        private var instance: KeyRegistry? = null
+
+        @JvmStatic
+        fun get(context: Context): KeyRegistry {
+            return instance ?: synchronized(this) {
+                instance ?: KeyRegistry(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+}
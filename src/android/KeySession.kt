@@ -0,0 +1,108 @@
+package com.nostr.band.keyStore;
+
+// Decoded private key together with its x-only public key, checked against the alias on unlock.
+class UnlockedKey(val alias: String, private val privateKey: ByteArray, val publicKey: ByteArray) {
+
+    // Aliases are the hex public keys.
+    val publicKeyHex: String = alias
+
+    private var wiped = false
+
+    // Callers get their own copy and wipe it once done. Locking wipes the key kept here, so
+    // operations that fan out take their copy before the first task starts, not inside the tasks.
+    @Synchronized
+    fun copyPrivateKey(): ByteArray {
+        check(!wiped) { "Key is locked" }
+        return privateKey.copyOf()
+    }
+
+    @Synchronized
+    fun wipe() {
+        wiped = true
+        privateKey.fill(0)
+    }
+}
+
+// Keeps unlocked keys in memory, one per account, each until it stays unused for longer than the
+// idle timeout, so requests for several accounts can run side by side.
+class KeySession(ttlMillis: Long) {
+
+    @Volatile
+    var ttlMillis: Long = ttlMillis
+
+    private class SessionEntry(val key: UnlockedKey, var lastUsed: Long)
+
+    private val entries = object : LinkedHashMap<String, SessionEntry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, SessionEntry>): Boolean {
+            if (size > MAX_KEYS) {
+                eldest.value.key.wipe()
+                return true
+            }
+            return false
+        }
+    }
+
+    // Keys lent to a thread instead of kept, until releaseUntracked().
+    private val untracked = object : ThreadLocal<ArrayList<UnlockedKey>>() {
+        override fun initialValue() = ArrayList<UnlockedKey>()
+    }
+
+    @Synchronized
+    fun get(alias: String): UnlockedKey? {
+        val now = System.currentTimeMillis()
+        removeExpired(now)
+        val entry = entries[alias] ?: return null
+        entry.lastUsed = now
+        return entry.key
+    }
+
+    // Returns the key to use: the one already kept for the alias if another request unlocked it
+    // first, otherwise the given one. With the session disabled, or keep false, the key is only
+    // lent to the calling thread, which wipes it with releaseUntracked() once its operation is done.
+    @Synchronized
+    @JvmOverloads
+    fun put(unlockedKey: UnlockedKey, keep: Boolean = true): UnlockedKey {
+        if (ttlMillis <= 0 || !keep) {
+            untracked.get()!!.add(unlockedKey)
+            return unlockedKey
+        }
+        val now = System.currentTimeMillis()
+        removeExpired(now)
+        val existing = entries[unlockedKey.alias]
+        if (existing != null) {
+            existing.lastUsed = now
+            unlockedKey.wipe()
+            return existing.key
+        }
+        entries[unlockedKey.alias] = SessionEntry(unlockedKey, now)
+        return unlockedKey
+    }
+
+    // Wipes the keys lent to this thread.
+    fun releaseUntracked() {
+        val keys = untracked.get()!!
+        keys.forEach { it.wipe() }
+        keys.clear()
+    }
+
+    @Synchronized
+    fun lock() {
+        entries.values.forEach { it.key.wipe() }
+        entries.clear()
+    }
+
+    private fun removeExpired(now: Long) {
+        val iterator = entries.values.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (now - entry.lastUsed > ttlMillis) {
+                entry.key.wipe()
+                iterator.remove()
+            }
+        }
+    }
+
+    companion object {
+        private const val MAX_KEYS = 16
+    }
+}
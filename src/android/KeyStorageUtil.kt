@@ -2,46 +2,61 @@ package com.nostr.band.keyStore;
 
 import android.content.Context
 import android.util.Log
-import java.io.ByteArrayOutputStream
 
-// Helper function for storing keys to internal storage.
+// Helper function for storing keys to internal storage. Values live in a single KeyVault file,
+// values from the former SKS_KEY_FILE<alias> files are moved there on first access.
 object KeyStorage {
 
     private const val SKS_FILENAME = "SKS_KEY_FILE"
     private const val TAG = "KeyStorageLogTag"
 
+    @Volatile
+    private var vault: KeyVault? = null
+
+    // Returns false when the value could not be written to disk.
     @JvmStatic
-    fun writeValues(context: Context, keyAlias: String, vals: ByteArray?) {
-        try {
-            val fos = context.openFileOutput(SKS_FILENAME + keyAlias, Context.MODE_PRIVATE)
-            fos.write(vals)
-            fos.close()
+    fun writeValues(context: Context, keyAlias: String, vals: ByteArray): Boolean {
+        val start = Metrics.beginStage("writeValues")
+        return try {
+            getVault(context).put(keyAlias, vals)
+            true
         } catch (e: Exception) {
             Log.e(TAG, "Exception: " + e.message)
+            false
+        } finally {
+            Metrics.endStage("writeValues", start)
         }
     }
 
     @JvmStatic
     fun readValues(context: Context, keyAlias: String): ByteArray {
+        val start = Metrics.beginStage("readValues")
+        try {
+            return getVault(context).get(keyAlias) ?: ByteArray(0)
+        } finally {
+            Metrics.endStage("readValues", start)
+        }
+    }
+
+    // Returns false when the removal could not be written to disk.
+    @JvmStatic
+    fun removeValues(context: Context, keyAlias: String): Boolean {
         return try {
-            val fis = context.openFileInput(SKS_FILENAME + keyAlias)
-            val buffer = ByteArray(8192)
-            var bytesRead: Int
-            val bos = ByteArrayOutputStream()
-            while (fis.read(buffer).also { bytesRead = it } != -1) {
-                bos.write(buffer, 0, bytesRead)
-            }
-            val cipherText = bos.toByteArray()
-            fis.close()
-            cipherText
+            getVault(context).remove(keyAlias)
+            true
         } catch (e: Exception) {
             Log.e(TAG, "Exception: " + e.message)
-            ByteArray(0)
+            false
         }
     }
 
+    // Why stored values are missing, when the vault file was unreadable, null otherwise.
     @JvmStatic
-    fun removeValues(context: Context, keyAlias: String) {
-        context.deleteFile(SKS_FILENAME + keyAlias)
+    fun getVaultError(context: Context): String? = getVault(context).getError()
+
+    private fun getVault(context: Context): KeyVault {
+        return vault ?: synchronized(this) {
+            vault ?: KeyVault(context.applicationContext.filesDir, SKS_FILENAME).also { vault = it }
+        }
     }
-}
\ No newline at end of file
+}
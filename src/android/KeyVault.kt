@@ -0,0 +1,269 @@
+package com.nostr.band.keyStore;
+
+import android.util.AtomicFile
+import android.util.Log
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.IOException
+
+/**
+ * All stored values, wrapped secrets and key metadata, in one file that is read once and rewritten
+ * as a whole through [AtomicFile], so a crash leaves either the old or the new version on disk.
+ *
+ * Layout: magic, version, record count, then an index of (name, offset, length) entries followed
+ * by the values they point at.
+ *
+ * Writes are durable when [put] or [remove] return. Writers that queue up behind a running write
+ * are committed together by the next one, so a burst of changes costs one fsync instead of one
+ * per change. A change whose write fails is undone before the exception reaches the caller.
+ *
+ * A file that can't be parsed is renamed aside, never overwritten, and the vault starts empty;
+ * [getError] reports it until the next write succeeds.
+ */
+class KeyVault(private val directory: File, private val legacyPrefix: String) {
+
+    private val file = AtomicFile(File(directory, FILENAME))
+
+    private val records = LinkedHashMap<String, ByteArray>()
+
+    private var loaded = false
+
+    // A vault written by a newer version is left alone rather than overwritten.
+    private var writable = true
+
+    private var error: String? = null
+
+    private var version = 0L
+
+    private var flushedVersion = 0L
+
+    private val flushLock = Any()
+
+    @Synchronized
+    fun get(name: String): ByteArray? {
+        ensureLoaded()
+        return records[name]?.copyOf()
+    }
+
+    @Synchronized
+    fun getError(): String? {
+        ensureLoaded()
+        return error
+    }
+
+    @Throws(IOException::class)
+    fun put(name: String, value: ByteArray) {
+        val stored = value.copyOf()
+        val previous: ByteArray?
+        val target = synchronized(this) {
+            ensureLoaded()
+            previous = records.put(name, stored)
+            ++version
+        }
+        try {
+            sync(target)
+        } catch (e: IOException) {
+            rollback(name, stored, previous)
+            throw e
+        }
+    }
+
+    @Throws(IOException::class)
+    fun remove(name: String) {
+        val previous: ByteArray
+        val target = synchronized(this) {
+            ensureLoaded()
+            previous = records.remove(name) ?: return
+            ++version
+        }
+        try {
+            sync(target)
+        } catch (e: IOException) {
+            rollback(name, null, previous)
+            throw e
+        }
+    }
+
+    // Undoes a change whose write failed, unless a later change to the same name replaced it. The
+    // version moves on, so the next write drops the change from disk too if it got there.
+    @Synchronized
+    private fun rollback(name: String, value: ByteArray?, previous: ByteArray?) {
+        if (records[name] !== value) {
+            return
+        }
+        if (previous == null) {
+            records.remove(name)
+        } else {
+            records[name] = previous
+        }
+        ++version
+    }
+
+    // Whoever holds the lock writes every change made so far; callers whose change is already on
+    // disk by the time they get it return without writing.
+    private fun sync(target: Long) {
+        synchronized(flushLock) {
+            val snapshot: ByteArray
+            val snapshotVersion: Long
+            synchronized(this) {
+                if (flushedVersion >= target) {
+                    return
+                }
+                if (!writable) {
+                    throw IOException("vault has an unsupported version")
+                }
+                snapshot = serialize()
+                snapshotVersion = version
+            }
+
+            write(snapshot)
+
+            synchronized(this) {
+                flushedVersion = snapshotVersion
+                error = null
+            }
+        }
+    }
+
+    private fun write(snapshot: ByteArray) {
+        val output = file.startWrite()
+        try {
+            output.write(snapshot)
+            file.finishWrite(output)
+        } catch (e: IOException) {
+            file.failWrite(output)
+            throw e
+        }
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+
+        try {
+            parse(file.readFully())
+        } catch (e: FileNotFoundException) {
+            // first run, or values still in the per-alias files
+        } catch (e: UnsupportedVersionException) {
+            Log.e(TAG, "Exception: " + e.message)
+            writable = false
+            error = "Stored keys were written by a newer version"
+            return
+        } catch (e: IOException) {
+            Log.e(TAG, "Exception: " + e.message)
+            records.clear()
+            val quarantined = quarantine()
+            if (quarantined == null) {
+                writable = false
+                error = "Stored keys are unreadable"
+                return
+            }
+            Log.e(TAG, "unreadable vault moved to " + quarantined.name)
+            error = "Stored keys were unreadable and moved to " + quarantined.name
+        }
+
+        importLegacyFiles()
+    }
+
+    // Keeps the unreadable file for recovery, returns null when it couldn't be moved.
+    private fun quarantine(): File? {
+        val target = File(directory, FILENAME + ".corrupt-" + System.currentTimeMillis())
+        return if (file.baseFile.renameTo(target)) target else null
+    }
+
+    // Values from the per-alias files of older versions are moved in with a single write, and the
+    // files are deleted only once that write is on disk.
+    private fun importLegacyFiles() {
+        val legacyFiles = directory.listFiles { _, name -> name.startsWith(legacyPrefix) } ?: return
+        if (legacyFiles.isEmpty()) {
+            return
+        }
+
+        for (legacyFile in legacyFiles) {
+            val name = legacyFile.name.substring(legacyPrefix.length)
+            if (records.containsKey(name)) {
+                continue
+            }
+            try {
+                records[name] = legacyFile.readBytes()
+            } catch (e: IOException) {
+                Log.e(TAG, "Exception: " + e.message)
+                return
+            }
+        }
+
+        try {
+            write(serialize())
+        } catch (e: IOException) {
+            Log.e(TAG, "Exception: " + e.message)
+            return
+        }
+        legacyFiles.forEach { it.delete() }
+        Log.i(TAG, "imported " + legacyFiles.size + " legacy files")
+    }
+
+    private fun parse(data: ByteArray) {
+        val input = DataInputStream(ByteArrayInputStream(data))
+        if (input.readInt() != MAGIC) {
+            throw IOException("not a vault file")
+        }
+        val fileVersion = input.readInt()
+        if (fileVersion > VERSION) {
+            throw UnsupportedVersionException("unsupported vault version $fileVersion")
+        }
+
+        val count = input.readInt()
+        val names = arrayOfNulls<String>(count)
+        val offsets = IntArray(count)
+        val lengths = IntArray(count)
+        for (i in 0 until count) {
+            names[i] = input.readUTF()
+            offsets[i] = input.readInt()
+            lengths[i] = input.readInt()
+        }
+
+        val dataStart = data.size - input.available()
+        for (i in 0 until count) {
+            val start = dataStart + offsets[i]
+            if (offsets[i] < 0 || lengths[i] < 0 || start + lengths[i] > data.size) {
+                throw IOException("corrupt vault record")
+            }
+            records[names[i]!!] = data.copyOfRange(start, start + lengths[i])
+        }
+    }
+
+    private fun serialize(): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val output = DataOutputStream(bytes)
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.writeInt(records.size)
+        var offset = 0
+        for ((name, value) in records) {
+            output.writeUTF(name)
+            output.writeInt(offset)
+            output.writeInt(value.size)
+            offset += value.size
+        }
+        for (value in records.values) {
+            output.write(value)
+        }
+        output.flush()
+        return bytes.toByteArray()
+    }
+
+    private class UnsupportedVersionException(message: String) : IOException(message)
+
+    companion object {
+        private const val FILENAME = "nostr_vault"
+        private const val MAGIC = 0x4e4b5654 // "NKVT"
+        private const val VERSION = 1
+        private const val TAG = "KeyVaultLogTag"
+    }
+}
@@ -0,0 +1,146 @@
+package com.nostr.band.keyStore;
+
+import android.content.Context
+import android.os.Build
+import android.security.keystore.KeyGenParameterSpec
+import android.security.keystore.KeyProperties
+import java.math.BigInteger
+import java.security.GeneralSecurityException
+import java.security.KeyPairGenerator
+import java.security.KeyStore
+import java.security.PrivateKey
+import java.util.Calendar
+import javax.crypto.Cipher
+import javax.crypto.KeyGenerator
+import javax.crypto.SecretKey
+import javax.crypto.spec.GCMParameterSpec
+import javax.security.auth.x500.X500Principal
+
+/**
+ * Encrypts stored secrets with keys that never leave the Android keystore.
+ *
+ * Secrets are wrapped with a per-alias AES-256-GCM key, bound to the alias as associated data:
+ * "NK", version 1, the 12 bytes iv, then ciphertext and tag. Older versions used a per-alias
+ * RSA key pair with PKCS#1 padding, which is what's still written before API 23. Those blobs keep
+ * working and [isLegacy] tells the caller when one should be rewrapped.
+ */
+class KeyWrapper(private val context: Context, private val keyStore: KeyStore, private val provider: String) {
+
+    private val aesSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && provider == ANDROID_KEYSTORE
+
+    @Throws(GeneralSecurityException::class)
+    fun wrap(alias: String, secret: ByteArray): ByteArray {
+        if (!aesSupported) {
+            return wrapRsa(alias, secret)
+        }
+
+        val cipher = Cipher.getInstance(AES_ALGORITHM)
+        cipher.init(Cipher.ENCRYPT_MODE, getOrCreateAesKey(alias))
+        cipher.updateAAD(alias.toByteArray())
+        val iv = cipher.iv
+        require(iv.size == IV_SIZE) { "unexpected iv size" }
+
+        val wrapped = ByteArray(HEADER_SIZE + cipher.getOutputSize(secret.size))
+        wrapped[0] = MAGIC_0
+        wrapped[1] = MAGIC_1
+        wrapped[2] = VERSION_AES_GCM
+        iv.copyInto(wrapped, 3)
+        val written = cipher.doFinal(secret, 0, secret.size, wrapped, HEADER_SIZE)
+        return if (HEADER_SIZE + written == wrapped.size) wrapped else wrapped.copyOf(HEADER_SIZE + written)
+    }
+
+    @Throws(GeneralSecurityException::class)
+    fun unwrap(alias: String, wrapped: ByteArray): ByteArray {
+        // An RSA blob can start with the header by chance, it then has no AES key to go with it.
+        val aesKey = if (isLegacy(wrapped)) null else keyStore.getKey(aesAlias(alias), null) as SecretKey?
+        if (aesKey == null) {
+            val cipher = Cipher.getInstance(RSA_ALGORITHM)
+            cipher.init(Cipher.DECRYPT_MODE, keyStore.getKey(alias, null) as PrivateKey)
+            return cipher.doFinal(wrapped)
+        }
+
+        val cipher = Cipher.getInstance(AES_ALGORITHM)
+        cipher.init(Cipher.DECRYPT_MODE, aesKey, GCMParameterSpec(TAG_BITS, wrapped, 3, IV_SIZE))
+        cipher.updateAAD(alias.toByteArray())
+        return cipher.doFinal(wrapped, HEADER_SIZE, wrapped.size - HEADER_SIZE)
+    }
+
+    // True for blobs written with the RSA scheme, which [wrap] would now write differently.
+    fun isLegacy(wrapped: ByteArray): Boolean =
+            wrapped.size <= HEADER_SIZE || wrapped[0] != MAGIC_0 || wrapped[1] != MAGIC_1 || wrapped[2] != VERSION_AES_GCM
+
+    fun isMigrationNeeded(wrapped: ByteArray): Boolean = aesSupported && isLegacy(wrapped)
+
+    @Throws(GeneralSecurityException::class)
+    fun deleteLegacyKey(alias: String) {
+        if (keyStore.containsAlias(alias)) {
+            keyStore.deleteEntry(alias)
+        }
+    }
+
+    @Throws(GeneralSecurityException::class)
+    fun delete(alias: String) {
+        deleteLegacyKey(alias)
+        if (keyStore.containsAlias(aesAlias(alias))) {
+            keyStore.deleteEntry(aesAlias(alias))
+        }
+    }
+
+    // Provider lookups for both schemes, so the first unlock doesn't pay for them.
+    @Throws(GeneralSecurityException::class)
+    fun prewarm() {
+        Cipher.getInstance(RSA_ALGORITHM)
+        if (aesSupported) {
+            Cipher.getInstance(AES_ALGORITHM)
+        }
+    }
+
+    private fun getOrCreateAesKey(alias: String): SecretKey {
+        val aesAlias = aesAlias(alias)
+        (keyStore.getKey(aesAlias, null) as SecretKey?)?.let { return it }
+
+        val spec = KeyGenParameterSpec.Builder(aesAlias, KeyProperties.PURPOSE_ENCRYPT or KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build()
+        val generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, provider)
+        generator.init(spec)
+        return generator.generateKey()
+    }
+
+    @Suppress("DEPRECATION")
+    private fun wrapRsa(alias: String, secret: ByteArray): ByteArray {
+        if (!keyStore.containsAlias(alias)) {
+            val start = Calendar.getInstance()
+            val end = Calendar.getInstance()
+            end.add(Calendar.YEAR, 1)
+            val spec = android.security.KeyPairGeneratorSpec.Builder(context).setAlias(alias)
+                    .setSubject(X500Principal("CN=$alias")).setSerialNumber(BigInteger.ONE)
+                    .setStartDate(start.time).setEndDate(end.time).build()
+
+            val generator = KeyPairGenerator.getInstance("RSA", provider)
+            generator.initialize(spec)
+            generator.generateKeyPair()
+        }
+
+        val cipher = Cipher.getInstance(RSA_ALGORITHM)
+        cipher.init(Cipher.ENCRYPT_MODE, keyStore.getCertificate(alias).publicKey)
+        return cipher.doFinal(secret)
+    }
+
+    private fun aesAlias(alias: String) = alias + AES_ALIAS_SUFFIX
+
+    companion object {
+        private const val ANDROID_KEYSTORE = "AndroidKeyStore"
+        private const val RSA_ALGORITHM = "RSA/ECB/PKCS1Padding"
+        private const val AES_ALGORITHM = "AES/GCM/NoPadding"
+        private const val AES_ALIAS_SUFFIX = ".aes"
+        private const val MAGIC_0 = 'N'.code.toByte()
+        private const val MAGIC_1 = 'K'.code.toByte()
+        private const val VERSION_AES_GCM: Byte = 1
+        private const val IV_SIZE = 12
+        private const val HEADER_SIZE = 3 + IV_SIZE
+        private const val TAG_BITS = 128
+    }
+}
@@ -0,0 +1,59 @@
+package com.nostr.band.keyStore;
+
+import org.apache.cordova.CallbackContext
+import org.apache.cordova.CordovaWebView
+import org.apache.cordova.PluginResult
+
+// Passes results on to the original callback, timing the hand-off to the bridge and noting
+// whether the action answered with an error. Only used while metrics are enabled.
+class MeteredCallbackContext(private val delegate: CallbackContext, webView: CordovaWebView?) :
+        CallbackContext(delegate.callbackId, webView) {
+
+    @Volatile
+    var isFailed = false
+        private set
+
+    private var lastResultSent = false
+
+    private var onLastResult: Runnable? = null
+
+    override fun sendPluginResult(pluginResult: PluginResult) {
+        if (pluginResult.status != PluginResult.Status.OK.ordinal && pluginResult.status != PluginResult.Status.NO_RESULT.ordinal) {
+            isFailed = true
+        }
+        val start = Metrics.beginStage(BRIDGE_STAGE)
+        try {
+            delegate.sendPluginResult(pluginResult)
+        } finally {
+            Metrics.endStage(BRIDGE_STAGE, start)
+        }
+        if (!pluginResult.keepCallback) {
+            val onLastResult = synchronized(this) {
+                lastResultSent = true
+                onLastResult.also { onLastResult = null }
+            }
+            onLastResult?.run()
+        }
+    }
+
+    // Runs onLastResult once a result without keepCallback has been sent, right away if one was.
+    fun whenLastResultSent(onLastResult: Runnable) {
+        val sent = synchronized(this) {
+            if (!lastResultSent) {
+                this.onLastResult = onLastResult
+            }
+            lastResultSent
+        }
+        if (sent) {
+            onLastResult.run()
+        }
+    }
+
+    override fun isFinished(): Boolean = delegate.isFinished
+
+    override fun isChangingThreads(): Boolean = delegate.isChangingThreads
+
+    companion object {
+        private const val BRIDGE_STAGE = "bridge"
+    }
+}
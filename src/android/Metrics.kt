@@ -0,0 +1,198 @@
+package com.nostr.band.keyStore;
+
+import android.os.Trace
+import org.json.JSONException
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+// Latency histograms per action and per stage of an action, also emitted as android.os.Trace
+// sections for systrace/Perfetto. While disabled, begin/end cost a volatile read and nothing is
+// recorded.
+object Metrics {
+
+    @Volatile
+    private var enabled = false
+
+    private val actions = ConcurrentHashMap<String, Histogram>()
+    private val stages = ConcurrentHashMap<String, Histogram>()
+    private val counters = ConcurrentHashMap<String, AtomicLong>()
+
+    @JvmStatic
+    fun isEnabled() = enabled
+
+    @JvmStatic
+    fun setEnabled(enabled: Boolean) {
+        this.enabled = enabled
+    }
+
+    // Returns 0 while disabled, [endStage] then skips the section as well.
+    @JvmStatic
+    fun beginStage(stage: String): Long {
+        if (!enabled) {
+            return 0L
+        }
+        Trace.beginSection(stage)
+        return System.nanoTime()
+    }
+
+    // Has to run on the thread that called [beginStage], trace sections can't span threads.
+    @JvmStatic
+    fun endStage(stage: String, start: Long) {
+        if (start == 0L) {
+            return
+        }
+        val elapsed = System.nanoTime() - start
+        Trace.endSection()
+        histogram(stages, stage).record(elapsed, false)
+    }
+
+    @JvmStatic
+    fun beginAction(action: String): Long = beginStage(action)
+
+    @JvmStatic
+    fun endAction(action: String, start: Long, failed: Boolean) {
+        endActionSection(start)
+        recordAction(action, start, failed)
+    }
+
+    // For actions that answer later from other threads: the trace section ends on the thread that
+    // began it, the latency is recorded with [recordAction] once the last result is sent.
+    @JvmStatic
+    fun endActionSection(start: Long) {
+        if (start != 0L) {
+            Trace.endSection()
+        }
+    }
+
+    @JvmStatic
+    fun recordAction(action: String, start: Long, failed: Boolean) {
+        if (start != 0L) {
+            histogram(actions, action).record(System.nanoTime() - start, failed)
+        }
+    }
+
+    // For time measured elsewhere, such as the wait in the executor queue.
+    @JvmStatic
+    fun recordStage(stage: String, nanos: Long) {
+        if (enabled) {
+            histogram(stages, stage).record(nanos, false)
+        }
+    }
+
+    @JvmStatic
+    fun count(counter: String) {
+        if (enabled) {
+            counters.getOrPut(counter) { AtomicLong() }.incrementAndGet()
+        }
+    }
+
+    @JvmStatic
+    fun reset() {
+        actions.clear()
+        stages.clear()
+        counters.clear()
+    }
+
+    // Latencies are in microseconds.
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun toJSONObject(): JSONObject {
+        val result = JSONObject()
+        result.put("enabled", enabled)
+        result.put("actions", toJSONObject(actions))
+        result.put("stages", toJSONObject(stages))
+        val counts = JSONObject()
+        for ((name, value) in counters) {
+            counts.put(name, value.get())
+        }
+        result.put("counters", counts)
+        return result
+    }
+
+    private fun toJSONObject(histograms: Map<String, Histogram>): JSONObject {
+        val result = JSONObject()
+        for ((name, histogram) in histograms) {
+            result.put(name, histogram.toJSONObject())
+        }
+        return result
+    }
+
+    private fun histogram(histograms: ConcurrentHashMap<String, Histogram>, name: String): Histogram =
+            histograms[name] ?: histograms.getOrPut(name) { Histogram() }
+
+    // Log-linear buckets, 8 per power of two, so quantiles are within 1/16 of the real value.
+    private class Histogram {
+
+        private val buckets = LongArray(BUCKETS)
+        private var count = 0L
+        private var errors = 0L
+        private var total = 0L
+        private var max = 0L
+
+        @Synchronized
+        fun record(nanos: Long, failed: Boolean) {
+            val value = if (nanos < 0) 0 else nanos
+            buckets[bucketOf(value)]++
+            count++
+            total += value
+            if (value > max) max = value
+            if (failed) errors++
+        }
+
+        @Synchronized
+        fun toJSONObject(): JSONObject {
+            val result = JSONObject()
+            result.put("count", count)
+            result.put("errors", errors)
+            result.put("errorRate", if (count > 0) errors.toDouble() / count else 0.0)
+            result.put("mean", if (count > 0) micros(total / count) else 0.0)
+            result.put("p50", micros(quantile(0.50)))
+            result.put("p95", micros(quantile(0.95)))
+            result.put("p99", micros(quantile(0.99)))
+            result.put("max", micros(max))
+            return result
+        }
+
+        private fun quantile(q: Double): Long {
+            if (count == 0L) {
+                return 0
+            }
+            val rank = Math.ceil(q * count).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in buckets.indices) {
+                seen += buckets[i]
+                if (seen >= rank) {
+                    return minOf(valueOf(i), max)
+                }
+            }
+            return max
+        }
+
+        private fun micros(nanos: Long) = nanos / 1000.0
+
+        companion object {
+            private const val SUB_BUCKETS = 8
+            private const val BUCKETS = 62 * SUB_BUCKETS
+
+            fun bucketOf(value: Long): Int {
+                if (value < SUB_BUCKETS) {
+                    return value.toInt()
+                }
+                val exponent = 63 - java.lang.Long.numberOfLeadingZeros(value)
+                val sub = (value ushr (exponent - 3)).toInt() and (SUB_BUCKETS - 1)
+                return (exponent - 2) * SUB_BUCKETS + sub
+            }
+
+            // Middle of the bucket.
+            fun valueOf(bucket: Int): Long {
+                if (bucket < SUB_BUCKETS) {
+                    return bucket.toLong()
+                }
+                val shift = bucket / SUB_BUCKETS - 1
+                val lower = (SUB_BUCKETS + bucket % SUB_BUCKETS).toLong() shl shift
+                return lower + (1L shl shift) / 2
+            }
+        }
+    }
+}
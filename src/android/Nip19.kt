@@ -0,0 +1,157 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import org.spongycastle.util.encoders.Hex
+
+/**
+ * NIP-19 bech32 entities. npub, nsec and note carry 32 bytes as hex, nprofile and nevent carry
+ * TLV records: 0 pubkey or event id, 1 relay, 2 author, 3 kind.
+ * See https://github.com/nostr-protocol/nips/blob/master/19.md.
+ *
+ * Entities use the same JSON shape both ways, {type, data}, where data is the hex string for the
+ * bare entities, {pubkey, relays} for nprofile and {id, relays, author, kind} for nevent.
+ */
+object Nip19 {
+
+    private const val TLV_SPECIAL = 0
+    private const val TLV_RELAY = 1
+    private const val TLV_AUTHOR = 2
+    private const val TLV_KIND = 3
+
+    private val byteBuffers = object : ThreadLocal<ByteArray>() {
+        override fun initialValue() = ByteArray(256)
+    }
+
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun encode(entity: JSONObject): String {
+        val type = entity.getString("type")
+        return when (type) {
+            "npub", "nsec", "note" -> {
+                val data = decodeHex32(entity.getString("data"))
+                try {
+                    Bech32.encodeBytes(type, data, Bech32.Encoding.Bech32)
+                } finally {
+                    data.fill(0)
+                }
+            }
+            "nprofile" -> {
+                val data = entity.getJSONObject("data")
+                encodeTlv(type, decodeHex32(data.getString("pubkey")), data.optJSONArray("relays"), null, -1)
+            }
+            "nevent" -> {
+                val data = entity.getJSONObject("data")
+                val author = data.optString("author")
+                encodeTlv(type, decodeHex32(data.getString("id")), data.optJSONArray("relays"),
+                        if (author.isEmpty()) null else decodeHex32(author),
+                        if (data.has("kind")) data.getLong("kind") else -1)
+            }
+            else -> throw IllegalArgumentException("unknown entity type $type")
+        }
+    }
+
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun decode(bech32: String): JSONObject {
+        val maxSize = bech32.length * 5 / 8
+        val output = byteBuffer(maxSize)
+        try {
+            val size = Bech32.decodeBytesInto(bech32, output)
+            val type = bech32.substring(0, bech32.lastIndexOf('1')).lowercase()
+            val entity = JSONObject()
+            entity.put("type", type)
+            when (type) {
+                "npub", "nsec", "note" -> {
+                    require(size == 32) { "invalid $type length" }
+                    entity.put("data", Hex.toHexString(output, 0, 32))
+                }
+                "nprofile", "nevent" -> entity.put("data", decodeTlv(type, output, size))
+                else -> throw IllegalArgumentException("unknown entity type $type")
+            }
+            return entity
+        } finally {
+            // Bytes are written before the checksum is checked, so invalid input leaves some too.
+            output.fill(0, 0, maxSize)
+        }
+    }
+
+    private fun encodeTlv(type: String, special: ByteArray, relays: JSONArray?, author: ByteArray?, kind: Long): String {
+        val relayBytes = Array(relays?.length() ?: 0) { relays!!.getString(it).toByteArray(Charsets.UTF_8) }
+        var size = 2 + special.size
+        for (relay in relayBytes) {
+            require(relay.size <= 255) { "relay url is too long" }
+            size += 2 + relay.size
+        }
+        if (author != null) size += 2 + author.size
+        if (kind >= 0) size += 6
+
+        val output = byteBuffer(size)
+        var pos = writeTlv(output, 0, TLV_SPECIAL, special)
+        for (relay in relayBytes) pos = writeTlv(output, pos, TLV_RELAY, relay)
+        if (author != null) pos = writeTlv(output, pos, TLV_AUTHOR, author)
+        if (kind >= 0) {
+            output[pos++] = TLV_KIND.toByte()
+            output[pos++] = 4
+            for (shift in 24 downTo 0 step 8) output[pos++] = (kind shr shift).toByte()
+        }
+        return Bech32.encodeBytes(type, output, 0, pos, Bech32.Encoding.Bech32)
+    }
+
+    private fun writeTlv(output: ByteArray, offset: Int, type: Int, value: ByteArray): Int {
+        output[offset] = type.toByte()
+        output[offset + 1] = value.size.toByte()
+        value.copyInto(output, offset + 2)
+        return offset + 2 + value.size
+    }
+
+    // Unknown TLV types are skipped, as the NIP asks.
+    private fun decodeTlv(type: String, data: ByteArray, size: Int): JSONObject {
+        val result = JSONObject()
+        val relays = JSONArray()
+        var pos = 0
+        while (pos < size) {
+            require(pos + 2 <= size) { "invalid TLV" }
+            val t = data[pos].toInt() and 0xff
+            val length = data[pos + 1].toInt() and 0xff
+            val start = pos + 2
+            require(start + length <= size) { "invalid TLV" }
+            when (t) {
+                TLV_SPECIAL -> {
+                    require(length == 32) { "invalid TLV 0 length" }
+                    result.put(if (type == "nprofile") "pubkey" else "id", Hex.toHexString(data, start, 32))
+                }
+                TLV_RELAY -> relays.put(String(data, start, length, Charsets.UTF_8))
+                TLV_AUTHOR -> if (type == "nevent") {
+                    require(length == 32) { "invalid TLV 2 length" }
+                    result.put("author", Hex.toHexString(data, start, 32))
+                }
+                TLV_KIND -> if (type == "nevent") {
+                    require(length == 4) { "invalid TLV 3 length" }
+                    var kind = 0L
+                    for (i in 0 until 4) kind = (kind shl 8) or (data[start + i].toLong() and 0xff)
+                    result.put("kind", kind)
+                }
+            }
+            pos = start + length
+        }
+        require(result.has(if (type == "nprofile") "pubkey" else "id")) { "missing TLV 0 for $type" }
+        result.put("relays", relays)
+        return result
+    }
+
+    private fun decodeHex32(hex: String): ByteArray {
+        require(hex.length == 64) { "expected 32 bytes hex" }
+        return Hex.decode(hex)
+    }
+
+    private fun byteBuffer(size: Int): ByteArray {
+        var buffer = byteBuffers.get()!!
+        if (buffer.size < size) {
+            buffer = ByteArray(size)
+            byteBuffers.set(buffer)
+        }
+        return buffer
+    }
+}
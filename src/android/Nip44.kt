@@ -0,0 +1,167 @@
+package com.nostr.band.keyStore;
+
+import org.spongycastle.crypto.params.KeyParameter
+import org.spongycastle.crypto.params.ParametersWithIV
+import org.spongycastle.util.encoders.Base64
+import java.security.MessageDigest
+import java.security.SecureRandom
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * NIP-44 version 2 payload encryption: ChaCha20 with HMAC-SHA256 authentication, keys derived with HKDF.
+ * See https://github.com/nostr-protocol/nips/blob/master/44.md.
+ */
+object Nip44 {
+
+    private const val VERSION: Byte = 2
+    private const val MIN_PLAINTEXT_SIZE = 1
+    private const val MAX_PLAINTEXT_SIZE = 65535
+    private val SALT = "nip44-v2".toByteArray()
+
+    private val random = SecureRandom()
+
+    @JvmStatic
+    fun getConversationKey(privateKey: ByteArray, pubKey: ByteArray): ByteArray {
+        val sharedSecret = Utils.getSharedSecret(privateKey, pubKey)
+        try {
+            return getConversationKey(sharedSecret)
+        } finally {
+            sharedSecret.fill(0)
+        }
+    }
+
+    // HKDF-extract of the unhashed ECDH x coordinate.
+    @JvmStatic
+    fun getConversationKey(sharedSecret: ByteArray): ByteArray = hmacSha256(SALT, sharedSecret)
+
+    @JvmStatic
+    fun encrypt(plaintext: String, conversationKey: ByteArray): String =
+            Base64.toBase64String(encryptBytes(plaintext.toByteArray(), conversationKey))
+
+    @JvmStatic
+    fun encrypt(plaintext: String, conversationKey: ByteArray, nonce: ByteArray): String =
+            Base64.toBase64String(encryptBytes(plaintext.toByteArray(), conversationKey, nonce))
+
+    @JvmStatic
+    fun decrypt(payload: String, conversationKey: ByteArray): String {
+        require(payload.isNotEmpty() && payload[0] != '#') { "unknown encryption version" }
+        require(payload.length in 132..87472) { "invalid payload size" }
+
+        return String(decryptBytes(Base64.decode(payload), conversationKey), Charsets.UTF_8)
+    }
+
+    /**
+     * @return the raw payload, version byte, nonce, ciphertext and MAC, without the base64 wrapping
+     */
+    @JvmStatic
+    fun encryptBytes(plaintext: ByteArray, conversationKey: ByteArray): ByteArray {
+        val nonce = ByteArray(32)
+        random.nextBytes(nonce)
+        return encryptBytes(plaintext, conversationKey, nonce)
+    }
+
+    @JvmStatic
+    fun encryptBytes(plaintext: ByteArray, conversationKey: ByteArray, nonce: ByteArray): ByteArray {
+        val messageKeys = getMessageKeys(conversationKey, nonce)
+        try {
+            val padded = pad(plaintext)
+            val ciphertext = chacha20(messageKeys, padded)
+            val mac = hmacAad(messageKeys, nonce, ciphertext)
+
+            val payload = ByteArray(1 + nonce.size + ciphertext.size + mac.size)
+            payload[0] = VERSION
+            nonce.copyInto(payload, 1)
+            ciphertext.copyInto(payload, 1 + nonce.size)
+            mac.copyInto(payload, 1 + nonce.size + ciphertext.size)
+            return payload
+        } finally {
+            messageKeys.fill(0)
+        }
+    }
+
+    /**
+     * @param data the raw payload, as returned by [encryptBytes]
+     */
+    @JvmStatic
+    fun decryptBytes(data: ByteArray, conversationKey: ByteArray): ByteArray {
+        require(data.size in 99..65603) { "invalid data size" }
+        require(data[0] == VERSION) { "unknown encryption version " + data[0] }
+
+        val nonce = data.copyOfRange(1, 33)
+        val ciphertext = data.copyOfRange(33, data.size - 32)
+        val mac = data.copyOfRange(data.size - 32, data.size)
+
+        val messageKeys = getMessageKeys(conversationKey, nonce)
+        try {
+            require(MessageDigest.isEqual(hmacAad(messageKeys, nonce, ciphertext), mac)) { "invalid MAC" }
+            return unpad(chacha20(messageKeys, ciphertext))
+        } finally {
+            messageKeys.fill(0)
+        }
+    }
+
+    @JvmStatic
+    fun calcPaddedLen(unpaddedLen: Int): Int {
+        if (unpaddedLen <= 32) {
+            return 32
+        }
+        val nextPower = Integer.highestOneBit(unpaddedLen - 1) shl 1
+        val chunk = if (nextPower <= 256) 32 else nextPower / 8
+        return chunk * ((unpaddedLen - 1) / chunk + 1)
+    }
+
+    private fun pad(unpadded: ByteArray): ByteArray {
+        require(unpadded.size in MIN_PLAINTEXT_SIZE..MAX_PLAINTEXT_SIZE) { "invalid plaintext length" }
+        val padded = ByteArray(2 + calcPaddedLen(unpadded.size))
+        padded[0] = (unpadded.size shr 8).toByte()
+        padded[1] = unpadded.size.toByte()
+        unpadded.copyInto(padded, 2)
+        return padded
+    }
+
+    private fun unpad(padded: ByteArray): ByteArray {
+        val unpaddedLen = ((padded[0].toInt() and 0xff) shl 8) or (padded[1].toInt() and 0xff)
+        require(unpaddedLen >= MIN_PLAINTEXT_SIZE && padded.size == 2 + calcPaddedLen(unpaddedLen)) { "invalid padding" }
+        return padded.copyOfRange(2, 2 + unpaddedLen)
+    }
+
+    // HKDF-expand(conversation_key, nonce, 76): chacha key [0, 32), chacha nonce [32, 44), hmac key [44, 76).
+    private fun getMessageKeys(conversationKey: ByteArray, nonce: ByteArray): ByteArray {
+        require(nonce.size == 32) { "invalid nonce length" }
+        val mac = CryptoContext.get().hmacSha256
+        mac.init(SecretKeySpec(conversationKey, "HmacSHA256"))
+        val keys = ByteArray(96)
+        var previous = ByteArray(0)
+        for (i in 0 until 3) {
+            mac.update(previous)
+            mac.update(nonce)
+            mac.update((i + 1).toByte())
+            previous = mac.doFinal()
+            previous.copyInto(keys, i * 32)
+        }
+        previous.fill(0)
+        return keys.copyOf(76).also { keys.fill(0) }
+    }
+
+    private fun chacha20(messageKeys: ByteArray, input: ByteArray): ByteArray {
+        val engine = CryptoContext.get().chacha20
+        engine.init(true, ParametersWithIV(KeyParameter(messageKeys, 0, 32), messageKeys, 32, 12))
+        val output = ByteArray(input.size)
+        engine.processBytes(input, 0, input.size, output, 0)
+        return output
+    }
+
+    private fun hmacAad(messageKeys: ByteArray, nonce: ByteArray, ciphertext: ByteArray): ByteArray {
+        val mac = CryptoContext.get().hmacSha256
+        mac.init(SecretKeySpec(messageKeys, 44, 32, "HmacSHA256"))
+        mac.update(nonce)
+        mac.update(ciphertext)
+        return mac.doFinal()
+    }
+
+    private fun hmacSha256(key: ByteArray, message: ByteArray): ByteArray {
+        val mac = CryptoContext.get().hmacSha256
+        mac.init(SecretKeySpec(key, "HmacSHA256"))
+        return mac.doFinal(message)
+    }
+}
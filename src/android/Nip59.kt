@@ -0,0 +1,123 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import org.spongycastle.util.encoders.Hex
+import java.security.SecureRandom
+
+/**
+ * NIP-59 gift wraps: the rumor, an unsigned event, is sealed to the recipient by its author as a
+ * kind 13 event, and the seal is wrapped with a one-time key as a kind 1059 event. Both layers are
+ * NIP-44 encrypted and dated up to two days back. See https://github.com/nostr-protocol/nips/blob/master/59.md.
+ */
+object Nip59 {
+
+    const val SEAL_KIND = 13
+    const val GIFT_WRAP_KIND = 1059
+    private const val TIMESTAMP_WINDOW = 2 * 24 * 60 * 60
+
+    private val random = SecureRandom()
+
+    // Sets the author and id of the rumor and drops a signature, rumors are never signed.
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun createRumor(event: JSONObject, authorPublicKey: ByteArray): JSONObject {
+        event.remove("sig")
+        if (!event.has("created_at")) {
+            event.put("created_at", System.currentTimeMillis() / 1000)
+        }
+        if (!event.has("tags")) {
+            event.put("tags", JSONArray())
+        }
+        val id = Utils.generateId(authorPublicKey, event.getLong("created_at"), event.getInt("kind"), event.getJSONArray("tags"), event.getString("content"))
+        event.put("pubkey", authorPublicKey.toHex())
+        event.put("id", id.toHex())
+        return event
+    }
+
+    /**
+     * @param conversationKey NIP-44 conversation key of the author and the recipient
+     */
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun seal(rumor: JSONObject, authorPublicKey: ByteArray, authorPrivateKey: ByteArray, conversationKey: ByteArray): JSONObject =
+            signedEvent(authorPublicKey, authorPrivateKey, SEAL_KIND, JSONArray(), Nip44.encrypt(rumor.toString(), conversationKey))
+
+    // The one-time key only lives for this call.
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun wrap(seal: JSONObject, recipient: ByteArray): JSONObject {
+        val ephemeralKey = ByteArray(32)
+        try {
+            var ephemeralPublicKey: ByteArray
+            while (true) {
+                random.nextBytes(ephemeralKey)
+                ephemeralPublicKey = try {
+                    Utils.pubkeyCreate(ephemeralKey)
+                } catch (e: RuntimeException) {
+                    // zero or out of the curve order
+                    continue
+                }
+                break
+            }
+
+            val conversationKey = Nip44.getConversationKey(ephemeralKey, recipient)
+            try {
+                val tags = JSONArray().put(JSONArray().put("p").put(recipient.toHex()))
+                return signedEvent(ephemeralPublicKey, ephemeralKey, GIFT_WRAP_KIND, tags, Nip44.encrypt(seal.toString(), conversationKey))
+            } finally {
+                conversationKey.fill(0)
+            }
+        } finally {
+            ephemeralKey.fill(0)
+        }
+    }
+
+    /**
+     * Opens a gift wrap addressed to the owner of [privateKey]. Both layers have to carry valid
+     * signatures and the rumor has to be by the author of the seal.
+     *
+     * @param sealConversationKey conversation key with the given seal author, callers may cache it,
+     * unlike the one with the one-time wrap key
+     * @return the rumor
+     */
+    @JvmStatic
+    @Throws(JSONException::class)
+    fun unwrap(giftWrap: JSONObject, privateKey: ByteArray, verifier: EventVerifier, sealConversationKey: (ByteArray) -> ByteArray): JSONObject {
+        require(giftWrap.optInt("kind") == GIFT_WRAP_KIND) { "not a gift wrap" }
+        require(verifier.verify(giftWrap, false)) { "invalid gift wrap signature" }
+
+        val wrapKey = Nip44.getConversationKey(privateKey, Hex.decode(giftWrap.getString("pubkey")))
+        val seal = try {
+            JSONObject(Nip44.decrypt(giftWrap.getString("content"), wrapKey))
+        } finally {
+            wrapKey.fill(0)
+        }
+        require(seal.optInt("kind") == SEAL_KIND) { "not a seal" }
+        require(verifier.verify(seal, false)) { "invalid seal signature" }
+
+        val author = seal.getString("pubkey")
+        val sealKey = sealConversationKey(Hex.decode(author))
+        val rumor = try {
+            JSONObject(Nip44.decrypt(seal.getString("content"), sealKey))
+        } finally {
+            sealKey.fill(0)
+        }
+        require(rumor.optString("pubkey") == author) { "rumor author doesn't match the seal" }
+        return rumor
+    }
+
+    private fun signedEvent(publicKey: ByteArray, privateKey: ByteArray, kind: Int, tags: JSONArray, content: String): JSONObject {
+        val createdAt = System.currentTimeMillis() / 1000 - random.nextInt(TIMESTAMP_WINDOW)
+        val id = Utils.generateId(publicKey, createdAt, kind, tags, content)
+        return JSONObject()
+                .put("id", id.toHex())
+                .put("pubkey", publicKey.toHex())
+                .put("created_at", createdAt)
+                .put("kind", kind)
+                .put("tags", tags)
+                .put("content", content)
+                .put("sig", Utils.sign(id, privateKey).toHex())
+    }
+}
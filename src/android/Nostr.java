@@ -3,14 +3,9 @@ package com.nostr.band.keyStore;
 import static com.nostr.band.keyStore.Bech32.Encoding;
 import static com.nostr.band.keyStore.Bech32.decodeBytes;
 import static com.nostr.band.keyStore.Bech32.encodeBytes;
-import static com.nostr.band.keyStore.KeyStorage.readValues;
-import static com.nostr.band.keyStore.KeyStorage.removeValues;
-import static com.nostr.band.keyStore.KeyStorage.writeValues;
 import static com.nostr.band.keyStore.Utils.decrypt;
 import static com.nostr.band.keyStore.Utils.encrypt;
-import static com.nostr.band.keyStore.Utils.generateId;
 import static com.nostr.band.keyStore.Utils.pubkeyCreate;
-import static com.nostr.band.keyStore.Utils.sign;
 
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
@@ -19,9 +14,9 @@ import android.content.ClipboardManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.security.KeyPairGeneratorSpec;
 import android.text.InputType;
 import android.text.method.PasswordTransformationMethod;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -35,58 +30,162 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.journeyapps.barcodescanner.BarcodeEncoder;
 
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.spongycastle.util.encoders.Base64;
 import org.spongycastle.util.encoders.Hex;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
-
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
-import javax.security.auth.x500.X500Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kotlin.Triple;
 
 public class Nostr extends CordovaPlugin {
-  private static final String CURRENT_ALIAS = "currentAlias";
-  private static final String KEYS_ALIAS = "nostrKeys";
-  private static final String KEYSTORE_PROVIDER_1 = "AndroidKeyStore";
-  private static final String KEYSTORE_PROVIDER_2 = "AndroidKeyStoreBCWorkaround";
-  private static final String KEYSTORE_PROVIDER_3 = "AndroidOpenSSL";
-  private static final String RSA_ALGORITHM = "RSA/ECB/PKCS1Padding";
   private static final String TAG = "NostrLogTag";
+  private static final String SESSION_TIMEOUT_PREFERENCE = "NostrKeySessionTimeout";
+  private static final int DEFAULT_SESSION_TIMEOUT = 300;
+  private static final String METRICS_PREFERENCE = "NostrMetrics";
+  private static final String BUSY_MESSAGE = "Too many pending requests, try again later";
+  private static final int DEFAULT_CHUNK_SIZE = 50;
+  private static final int VERIFIED_CACHE_SIZE = 4096;
+  private static final long DEFAULT_JOB_TIMEOUT = 60000;
+  private static final long PROGRESS_INTERVAL = 1000;
+  private static final int QR_CODE_SIZE_DP = 240;
+  private static final Object QR_CODE_RELEASED = new Object();
+  private static final Set<String> BULK_ACTIONS = new HashSet<>(Arrays.asList("signEvents", "decryptBatch", "warmUpSecrets", "nip19Encode", "nip19Decode", "verifyEvents", "mineEvent", "generateVanityKey", "wrap", "unwrapBatch"));
+  private static final Set<String> JOB_ACTIONS = new HashSet<>(Arrays.asList("mineEvent", "generateVanityKey"));
+  // Actions that change the keys or who may use them. They run one at a time in call order, and so
+  // does every action called while one of them is pending, so a signEvent called right after
+  // selectKey uses the new key.
+  private static final Set<String> ORDERED_ACTIONS = new HashSet<>(Arrays.asList("addKey", "generateKey", "selectKey", "editKey", "deleteKey", "lock", "setSignerApproval"));
+
+  private KeyManager keyManager;
+  private PluginExecutor pluginExecutor;
+  private KeyRegistry keyRegistry;
+  private EventVerifier eventVerifier;
+
+  // jobId -> cancels the job
+  private final Map<String, Runnable> jobs = new ConcurrentHashMap<>();
+
+  // Actions submitted to the ordered lane that haven't finished yet.
+  private final AtomicInteger pendingOrderedActions = new AtomicInteger();
+
+  @Override
+  protected void pluginInitialize() {
+    keyManager = KeyManager.get(getContext());
+    keyManager.getKeySession().setTtlMillis(preferences.getInteger(SESSION_TIMEOUT_PREFERENCE, DEFAULT_SESSION_TIMEOUT) * 1000L);
+    Metrics.setEnabled(preferences.getBoolean(METRICS_PREFERENCE, false));
+    pluginExecutor = new PluginExecutor();
+    keyRegistry = keyManager.getKeyRegistry();
+    eventVerifier = new EventVerifier(VERIFIED_CACHE_SIZE);
+
+    try {
+      pluginExecutor.submit(PluginExecutor.Priority.INTERACTIVE, keyManager::prewarm);
+    } catch (RejectedExecutionException e) {
+      Log.e(TAG, "Exception: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void onPause(boolean multitasking) {
+    lockSession();
+  }
+
+  @Override
+  public void onDestroy() {
+    SignerApprovals.get(getContext()).setListener(null);
+    lockSession();
+    for (Runnable cancel : jobs.values()) {
+      cancel.run();
+    }
+    pluginExecutor.shutdown();
+  }
 
   @Override
-  public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+  public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
+
+    // Cordova calls execute on one thread, so the pending count seen here covers every earlier call.
+    boolean ordered = ORDERED_ACTIONS.contains(action) || pendingOrderedActions.get() > 0;
+    PluginExecutor.Priority priority = ordered ? PluginExecutor.Priority.ORDERED
+        : BULK_ACTIONS.contains(action) ? PluginExecutor.Priority.BULK : PluginExecutor.Priority.INTERACTIVE;
+    if (ordered) {
+      pendingOrderedActions.incrementAndGet();
+    }
+
+    long queued = Metrics.isEnabled() ? System.nanoTime() : 0L;
+
+    try {
+      pluginExecutor.submit(priority, () -> {
+        MeteredCallbackContext meteredContext = null;
+        if (queued != 0L) {
+          Metrics.recordStage("queue", System.nanoTime() - queued);
+          meteredContext = new MeteredCallbackContext(callbackContext, webView);
+        }
+        CallbackContext context = meteredContext != null ? meteredContext : callbackContext;
+
+        long start = Metrics.beginAction(action);
+        boolean failed = false;
+        try {
+          if (!dispatch(action, args, context)) {
+            failed = true;
+            context.sendPluginResult(new PluginResult(PluginResult.Status.INVALID_ACTION));
+          }
+        } catch (Exception e) {
+          failed = true;
+          Log.e(TAG, "Exception: " + e.getMessage());
+          context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getMessage()));
+        } finally {
+          if (meteredContext != null && JOB_ACTIONS.contains(action)) {
+            // Jobs answer from their own threads, the action ends with their last result.
+            MeteredCallbackContext jobContext = meteredContext;
+            Metrics.endActionSection(start);
+            jobContext.whenLastResultSent(() -> Metrics.recordAction(action, start, jobContext.isFailed()));
+          } else {
+            Metrics.endAction(action, start, failed || (meteredContext != null && meteredContext.isFailed()));
+          }
+          keyManager.getKeySession().releaseUntracked();
+          if (ordered) {
+            pendingOrderedActions.decrementAndGet();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (ordered) {
+        pendingOrderedActions.decrementAndGet();
+      }
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, BUSY_MESSAGE));
+    }
+
+    return true;
+  }
+
+  private boolean dispatch(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
 
     if (action.equals("getPublicKey")) {
       getPublicKey(callbackContext);
     } else if (action.equals("signEvent")) {
       signEvent(args, callbackContext);
+    } else if (action.equals("signEvents")) {
+      signEvents(args, callbackContext);
     } else if (action.equals("listKeys")) {
       listKeys(callbackContext);
     } else if (action.equals("addKey")) {
@@ -105,6 +204,54 @@ public class Nostr extends CordovaPlugin {
       encryptData(args, callbackContext);
     } else if (action.equals("decrypt")) {
       decryptData(args, callbackContext);
+    } else if (action.equals("nip44Encrypt")) {
+      nip44EncryptData(args, callbackContext);
+    } else if (action.equals("nip44Decrypt")) {
+      nip44DecryptData(args, callbackContext);
+    } else if (action.equals("signEventBinary")) {
+      signEventBinary(args, callbackContext);
+    } else if (action.equals("encryptBinary")) {
+      encryptBinary(new CordovaArgs(args), callbackContext);
+    } else if (action.equals("decryptBinary")) {
+      decryptBinary(new CordovaArgs(args), callbackContext);
+    } else if (action.equals("nip44EncryptBinary")) {
+      nip44EncryptBinary(new CordovaArgs(args), callbackContext);
+    } else if (action.equals("nip44DecryptBinary")) {
+      nip44DecryptBinary(new CordovaArgs(args), callbackContext);
+    } else if (action.equals("decryptBatch")) {
+      decryptBatch(args, callbackContext);
+    } else if (action.equals("lock")) {
+      lock(callbackContext);
+    } else if (action.equals("warmUpSecrets")) {
+      warmUpSecrets(args, callbackContext);
+    } else if (action.equals("getCacheStats")) {
+      getCacheStats(callbackContext);
+    } else if (action.equals("nip19Encode")) {
+      nip19Encode(args, callbackContext);
+    } else if (action.equals("nip19Decode")) {
+      nip19Decode(args, callbackContext);
+    } else if (action.equals("verifyEvents")) {
+      verifyEvents(args, callbackContext);
+    } else if (action.equals("mineEvent")) {
+      mineEvent(args, callbackContext);
+    } else if (action.equals("generateVanityKey")) {
+      generateVanityKey(args, callbackContext);
+    } else if (action.equals("cancelJob")) {
+      cancelJob(args, callbackContext);
+    } else if (action.equals("getMetrics")) {
+      getMetrics(callbackContext);
+    } else if (action.equals("resetMetrics")) {
+      resetMetrics(args, callbackContext);
+    } else if (action.equals("wrap")) {
+      wrap(args, callbackContext);
+    } else if (action.equals("unwrapBatch")) {
+      unwrapBatch(args, callbackContext);
+    } else if (action.equals("listSigners")) {
+      listSigners(callbackContext);
+    } else if (action.equals("setSignerApproval")) {
+      setSignerApproval(args, callbackContext);
+    } else if (action.equals("watchSignerRequests")) {
+      watchSignerRequests(callbackContext);
     } else {
       return false;
     }
@@ -114,54 +261,100 @@ public class Nostr extends CordovaPlugin {
 
   private boolean getPublicKey(CallbackContext callbackContext) throws JSONException {
 
+    // The alias is the public key, so this is answered from the key metadata alone.
     String currentAlias = getCurrentAlias();
+    if ("".equals(currentAlias) || !keyRegistry.contains(currentAlias)) {
 
-    String privateKey = (Objects.nonNull(currentAlias) && !"".equals(currentAlias)) ? getPrivateKey(currentAlias) : "";
-    if ("".equals(privateKey)) {
+      String vaultError = KeyStorage.getVaultError(getContext());
+      if (vaultError != null) {
+        callbackContext.error(vaultError);
+        return true;
+      }
 
       addKeyPrompt(callbackContext);
 
       return true;
     }
 
-    String publicKey = new String(generatePublicKey(privateKey), StandardCharsets.UTF_8);
-
-    callbackContext.success(initResponseJSONObject(publicKey));
+    callbackContext.success(initResponseJSONObject(currentAlias));
 
     return true;
   }
 
   private boolean signEvent(JSONArray args, CallbackContext callbackContext) throws JSONException {
 
-    String currentAlias = getCurrentAlias();
-    String privateKey = getPrivateKey(currentAlias);
-    byte[] publicKey = pubkeyCreate(getBytePrivateKey(privateKey));
-    JSONObject jsonObject = args.getJSONObject(0);
-    int kind = jsonObject.getInt("kind");
-    String content = jsonObject.getString("content");
-    List<List<String>> tags = parseTags(jsonObject.getJSONArray("tags"));
-    long createdAt = jsonObject.getLong("created_at");
-    byte[] bytes = generateId(publicKey, createdAt, kind, tags, content);
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-    byte[] sign = sign(bytes, getBytePrivateKey(privateKey));
-    String id = new String(Hex.encode(bytes), StandardCharsets.UTF_8);
-    String signString = new String(Hex.encode(sign), StandardCharsets.UTF_8);
-    String publicKeyString = new String(generatePublicKey(privateKey), StandardCharsets.UTF_8);
+    JSONObject jsonObject = args.getJSONObject(0);
 
-    jsonObject.put("id", id);
-    jsonObject.put("pubkey", publicKeyString);
-    jsonObject.put("sig", signString);
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    try {
+      keyManager.signEvent(jsonObject, unlockedKey, bytePrivateKey);
+    } finally {
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
 
     callbackContext.success(jsonObject);
 
     return true;
   }
 
-  private boolean listKeys(CallbackContext callbackContext) throws JSONException {
-    String keysData = getKeysStringData();
-    JSONObject keysObjectData = getKeysObjectData(keysData);
+  private boolean signEvents(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    JSONArray events = args.getJSONArray(0);
+    List<Future<JSONObject>> futures = new ArrayList<>(events.length());
+
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    try {
+      for (int i = 0; i < events.length(); i++) {
+        Object event = events.opt(i);
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          if (!(event instanceof JSONObject)) {
+            throw new JSONException("Event is not an object");
+          }
+          return keyManager.signEvent((JSONObject) event, unlockedKey, bytePrivateKey);
+        }));
+      }
+
+      JSONArray signedEvents = new JSONArray();
+      for (Future<JSONObject> future : futures) {
+        signedEvents.put(getSignedEvent(future));
+      }
+
+      callbackContext.success(signedEvents);
+    } finally {
+      for (Future<JSONObject> future : futures) {
+        future.cancel(true);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
+
+    return true;
+  }
 
-    callbackContext.success(keysObjectData);
+  private JSONObject getSignedEvent(Future<JSONObject> future) throws JSONException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      return initErrorJSONObject(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return initErrorJSONObject("Interrupted");
+    }
+  }
+
+  private boolean listKeys(CallbackContext callbackContext) throws JSONException {
+    callbackContext.success(keyRegistry.toJSONObject());
 
     return true;
   }
@@ -178,19 +371,17 @@ public class Nostr extends CordovaPlugin {
     JSONObject jsonObject = args.getJSONObject(0);
     String publicKey = jsonObject.getString("publicKey");
 
-    String keysData = getKeysStringData();
-    JSONObject keysObjectData = getKeysObjectData(keysData);
-
-    if (!existKey(publicKey, keysObjectData.names())) {
-      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key doesn't exist"));
+    if (!keyRegistry.contains(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, getMissingKeyMessage()));
       return false;
     }
 
-    keysObjectData.put(CURRENT_ALIAS, publicKey);
-
-    writeValues(getContext(), KEYS_ALIAS, keysObjectData.toString().getBytes());
+    if (!keyRegistry.select(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key couldn't be selected"));
+      return false;
+    }
 
-    callbackContext.success(keysObjectData);
+    callbackContext.success(keyRegistry.toJSONObject());
 
     return true;
   }
@@ -201,24 +392,21 @@ public class Nostr extends CordovaPlugin {
     String publicKey = jsonObject.getString("publicKey");
     String name = jsonObject.getString("name");
 
-    String keysData = getKeysStringData();
-    JSONObject keysObjectData = getKeysObjectData(keysData);
-
-    if (!existKey(publicKey, keysObjectData.names())) {
-      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key doesn't exist"));
+    if (!keyRegistry.contains(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, getMissingKeyMessage()));
       return false;
     }
-    if (existKeyName(publicKey, name, keysObjectData)) {
+    if (keyRegistry.existsName(publicKey, name)) {
       callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Name already exist"));
       return false;
     }
 
-    JSONObject key = keysObjectData.getJSONObject(publicKey);
-    key.put("name", name);
-
-    writeValues(getContext(), KEYS_ALIAS, keysObjectData.toString().getBytes());
+    if (!keyRegistry.rename(publicKey, name)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Name couldn't be stored"));
+      return false;
+    }
 
-    callbackContext.success(keysObjectData);
+    callbackContext.success(keyRegistry.toJSONObject());
 
     return true;
   }
@@ -228,21 +416,33 @@ public class Nostr extends CordovaPlugin {
     JSONObject jsonObject = args.getJSONObject(0);
     String publicKey = jsonObject.getString("publicKey");
 
-    String privateKey = getPrivateKey(publicKey);
+    byte[] encodedPrivateKey = keyManager.readEncodedPrivateKey(publicKey);
 
-    if ("".equals(privateKey)) {
-      callbackContext.error("Key doesn't exist");
+    if (encodedPrivateKey.length == 0) {
+      callbackContext.error(getMissingKeyMessage());
       return false;
     }
 
+    String privateKey = new String(encodedPrivateKey, StandardCharsets.UTF_8);
+    Arrays.fill(encodedPrivateKey, (byte) 0);
+
     Runnable runnable = () -> {
       AlertDialog.Builder alertDialogBuilder = initAlertDialog(privateKey, "Private Key");
-      setQrCodeToAlertDialog(alertDialogBuilder, privateKey);
+      int qrCodeSize = getQrCodeSize();
+      ImageView qrCodeView = setQrCodePlaceholder(alertDialogBuilder, qrCodeSize);
       setNegativeButton(alertDialogBuilder, "ok", callbackContext, PluginResult.Status.OK);
       setCopyButton(alertDialogBuilder, "Private key", privateKey);
       setOnCancelListener(alertDialogBuilder, callbackContext, PluginResult.Status.OK);
+      alertDialogBuilder.setOnDismissListener(dialog -> releaseQrCode(qrCodeView));
       AlertDialog alertDialog = showAlertDialog(alertDialogBuilder);
       changeTextDirection(alertDialog);
+
+      // The dialog is up with an empty placeholder, the QR code is swapped in once it's encoded.
+      try {
+        pluginExecutor.submit(PluginExecutor.Priority.INTERACTIVE, () -> renderQrCode(qrCodeView, privateKey, qrCodeSize));
+      } catch (RejectedExecutionException e) {
+        Log.e(TAG, "Exception: " + e.getMessage());
+      }
     };
 
     this.cordova.getActivity().runOnUiThread(runnable);
@@ -255,19 +455,17 @@ public class Nostr extends CordovaPlugin {
     JSONObject jsonObject = args.getJSONObject(0);
     String publicKey = jsonObject.getString("publicKey");
 
-    String keysData = getKeysStringData();
-    JSONObject keysObjectData = getKeysObjectData(keysData);
-
-    if (!existKey(publicKey, keysObjectData.names())) {
-      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key doesn't exist"));
+    if (!keyRegistry.contains(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, getMissingKeyMessage()));
       return false;
     }
 
+    Runnable release = holdOrderedLane();
     Runnable runnable = () -> {
       AlertDialog.Builder alertDialogBuilder = initAlertDialog("", "Do you want delete key?");
-      setPositiveDeleteButton(alertDialogBuilder, "ok", keysObjectData, publicKey, callbackContext);
-      setNegativeButton(alertDialogBuilder, "cancel", callbackContext, PluginResult.Status.OK);
-      setOnCancelListener(alertDialogBuilder, callbackContext, PluginResult.Status.OK);
+      setPositiveDeleteButton(alertDialogBuilder, "ok", publicKey, callbackContext, release);
+      setNegativeButton(alertDialogBuilder, "cancel", callbackContext, PluginResult.Status.OK, release);
+      setOnCancelListener(alertDialogBuilder, callbackContext, PluginResult.Status.OK, release);
       AlertDialog alertDialog = showAlertDialog(alertDialogBuilder);
       changeTextDirection(alertDialog);
     };
@@ -282,11 +480,19 @@ public class Nostr extends CordovaPlugin {
     String publicKey = jsonObject.getString("pubkey");
     String plainText = jsonObject.getString("plaintext");
 
-    String currentAlias = getCurrentAlias();
-    String privateKey = getPrivateKey(currentAlias);
-    byte[] bytePrivateKey = getBytePrivateKey(privateKey);
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-    String encryptedText = encrypt(plainText, bytePrivateKey, Hex.decode(publicKey));
+    byte[] sharedSecret = getSharedSecret(unlockedKey, Hex.decode(publicKey));
+    String encryptedText;
+    try {
+      encryptedText = encrypt(plainText, sharedSecret);
+    } finally {
+      Arrays.fill(sharedSecret, (byte) 0);
+    }
 
     callbackContext.success(encryptedText);
 
@@ -298,215 +504,844 @@ public class Nostr extends CordovaPlugin {
     String publicKey = jsonObject.getString("pubkey");
     String cipherText = jsonObject.getString("ciphertext");
 
-    String currentAlias = getCurrentAlias();
-    String privateKey = getPrivateKey(currentAlias);
-    byte[] bytePrivateKey = getBytePrivateKey(privateKey);
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-    String encryptedText = decrypt(cipherText, bytePrivateKey, Hex.decode(publicKey));
+    byte[] sharedSecret = getSharedSecret(unlockedKey, Hex.decode(publicKey));
+    String encryptedText;
+    try {
+      encryptedText = decrypt(cipherText, sharedSecret);
+    } finally {
+      Arrays.fill(sharedSecret, (byte) 0);
+    }
 
     callbackContext.success(encryptedText);
 
     return true;
   }
 
-  private List<List<String>> parseTags(JSONArray jsonArray) throws JSONException {
-    List<List<String>> allTags = new ArrayList<>();
-    for (int i = 0; i < jsonArray.length(); i++) {
-      ArrayList<String> tags = new ArrayList<>();
-      JSONArray tagsJsonArray = jsonArray.getJSONArray(i);
-      for (int j = 0; j < tagsJsonArray.length(); j++) {
-        tags.add(tagsJsonArray.getString(j));
-      }
-      allTags.add(tags);
+  private boolean nip44EncryptData(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    JSONObject jsonObject = args.getJSONObject(0);
+    String publicKey = jsonObject.getString("pubkey");
+    String plainText = jsonObject.getString("plaintext");
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
     }
-    return allTags;
+
+    byte[] conversationKey = getConversationKey(unlockedKey, Hex.decode(publicKey));
+    String encryptedText;
+    try {
+      encryptedText = Nip44.encrypt(plainText, conversationKey);
+    } finally {
+      Arrays.fill(conversationKey, (byte) 0);
+    }
+
+    callbackContext.success(encryptedText);
+
+    return true;
   }
 
-  private void saveCurrentAlias(JSONObject keysObjectData, String keyName, String publicKey) throws JSONException {
-    addKey(keysObjectData, publicKey, keyName);
-    writeValues(getContext(), KEYS_ALIAS, keysObjectData.toString().getBytes());
+  private boolean nip44DecryptData(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    JSONObject jsonObject = args.getJSONObject(0);
+    String publicKey = jsonObject.getString("pubkey");
+    String cipherText = jsonObject.getString("ciphertext");
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    byte[] conversationKey = getConversationKey(unlockedKey, Hex.decode(publicKey));
+    String decryptedText;
+    try {
+      decryptedText = Nip44.decrypt(cipherText, conversationKey);
+    } finally {
+      Arrays.fill(conversationKey, (byte) 0);
+    }
+
+    callbackContext.success(decryptedText);
+
+    return true;
   }
 
-  private boolean existKey(String publicKey, JSONArray names) throws JSONException {
+  // Binary variants take ArrayBuffer arguments and answer with an ArrayBuffer, so keys, ciphertexts,
+  // ids and signatures skip the hex/base64 string round trips and JSON escaping.
+
+  private boolean signEventBinary(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    JSONObject jsonObject = args.getJSONObject(0);
+    byte[] id = keyManager.generateId(unlockedKey.getPublicKey(), jsonObject);
+
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    byte[] sign;
+    try {
+      sign = keyManager.sign(id, bytePrivateKey);
+    } finally {
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
+
+    // id (32 bytes), pubkey (32 bytes), sig (64 bytes)
+    byte[] result = new byte[128];
+    System.arraycopy(id, 0, result, 0, 32);
+    System.arraycopy(unlockedKey.getPublicKey(), 0, result, 32, 32);
+    System.arraycopy(sign, 0, result, 64, 64);
 
-    Set<String> namesList = mapJSONArrayToSet(names);
+    callbackContext.success(result);
 
-    return namesList.contains(publicKey);
+    return true;
   }
 
-  private boolean existKeyName(String publicKey, String name, JSONObject keysObjectData) throws JSONException {
+  private boolean encryptBinary(CordovaArgs args, CallbackContext callbackContext) throws JSONException {
+    byte[] publicKey = args.getArrayBuffer(0);
+    byte[] plainText = args.getArrayBuffer(1);
 
-    Set<String> namesList = mapJSONArrayToSet(keysObjectData.names());
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-    Set<String> namesSet = namesList.stream()
-            .filter(keyName -> !CURRENT_ALIAS.equals(keyName) && !publicKey.equals(keyName))
-            .map(keyName -> {
-              try {
-                JSONObject key = keysObjectData.getJSONObject(keyName);
-                return key.getString("name");
-              } catch (JSONException e) {
-                return null;
-              }
-            })
-            .collect(Collectors.toSet());
+    byte[] sharedSecret = getSharedSecret(unlockedKey, publicKey);
+    byte[] encrypted;
+    try {
+      encrypted = Utils.encryptBytes(plainText, sharedSecret);
+    } finally {
+      Arrays.fill(sharedSecret, (byte) 0);
+    }
 
-    return namesSet.contains(name);
+    callbackContext.success(encrypted);
+
+    return true;
   }
 
+  private boolean decryptBinary(CordovaArgs args, CallbackContext callbackContext) throws JSONException {
+    byte[] publicKey = args.getArrayBuffer(0);
+    byte[] cipherText = args.getArrayBuffer(1);
 
-  private Set<String> mapJSONArrayToSet(JSONArray names) throws JSONException {
-    Set<String> namesList = new HashSet<>();
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-    if (names != null && names.length() > 0) {
-      for (int i = 0; i < names.length(); i++) {
-        String name = names.getString(i);
-        namesList.add(name);
-      }
+    byte[] sharedSecret = getSharedSecret(unlockedKey, publicKey);
+    byte[] decrypted;
+    try {
+      decrypted = Utils.decryptBytes(cipherText, sharedSecret);
+    } finally {
+      Arrays.fill(sharedSecret, (byte) 0);
     }
 
-    return namesList;
+    callbackContext.success(decrypted);
+
+    return true;
   }
 
-  private void addKey(JSONObject keysObjectData, String publicKey, String keyName) throws JSONException {
-    JSONArray names = keysObjectData.names();
-    if (names != null && names.length() > 0) {
-      for (int i = 0; i < names.length(); i++) {
-        String name = names.getString(i);
-        if (!name.equals(CURRENT_ALIAS)) {
-          JSONObject jsonObject = keysObjectData.getJSONObject(name);
-          jsonObject.put("isCurrent", false);
-          keysObjectData.put(name, jsonObject);
+  private boolean nip44EncryptBinary(CordovaArgs args, CallbackContext callbackContext) throws JSONException {
+    byte[] publicKey = args.getArrayBuffer(0);
+    byte[] plainText = args.getArrayBuffer(1);
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    byte[] conversationKey = getConversationKey(unlockedKey, publicKey);
+    byte[] encrypted;
+    try {
+      encrypted = Nip44.encryptBytes(plainText, conversationKey);
+    } finally {
+      Arrays.fill(conversationKey, (byte) 0);
+    }
+
+    callbackContext.success(encrypted);
+
+    return true;
+  }
+
+  private boolean nip44DecryptBinary(CordovaArgs args, CallbackContext callbackContext) throws JSONException {
+    byte[] publicKey = args.getArrayBuffer(0);
+    byte[] payload = args.getArrayBuffer(1);
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    byte[] conversationKey = getConversationKey(unlockedKey, publicKey);
+    byte[] decrypted;
+    try {
+      decrypted = Nip44.decryptBytes(payload, conversationKey);
+    } finally {
+      Arrays.fill(conversationKey, (byte) 0);
+    }
+
+    callbackContext.success(decrypted);
+
+    return true;
+  }
+
+  private boolean decryptBatch(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    JSONArray items = args.getJSONArray(0);
+    int chunkSize = Math.max(1, args.optInt(1, DEFAULT_CHUNK_SIZE));
+    List<Future<String>> futures = new ArrayList<>(items.length());
+
+    // Taken once here, a lock while the batch runs can't wipe the key under the tasks.
+    String alias = unlockedKey.getAlias();
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    try {
+      for (int i = 0; i < items.length(); i++) {
+        JSONObject item = items.optJSONObject(i);
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          if (item == null) {
+            throw new JSONException("Item is not an object");
+          }
+          byte[] sharedSecret = keyManager.getSharedSecret(alias, bytePrivateKey, Hex.decode(item.getString("pubkey")));
+          try {
+            return decrypt(item.getString("ciphertext"), sharedSecret);
+          } finally {
+            Arrays.fill(sharedSecret, (byte) 0);
+          }
+        }));
+      }
+
+      // Results are sent in input order, one chunk at a time, as soon as the whole chunk is ready.
+      int offset = 0;
+      JSONArray chunk = new JSONArray();
+      for (int i = 0; i < futures.size(); i++) {
+        chunk.put(getBatchItem(futures.get(i), "plaintext"));
+        if (chunk.length() == chunkSize && i < futures.size() - 1) {
+          sendChunk(callbackContext, offset, chunk, false);
+          offset = i + 1;
+          chunk = new JSONArray();
         }
       }
+      sendChunk(callbackContext, offset, chunk, true);
+    } finally {
+      for (Future<String> future : futures) {
+        future.cancel(true);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
     }
 
-    keysObjectData.put(CURRENT_ALIAS, publicKey);
+    return true;
+  }
 
-    JSONObject newKey = new JSONObject();
-    newKey.put("name", keyName);
-    newKey.put("publicKey", publicKey);
-    newKey.put("isCurrent", true);
+  // NIP-59: the rumor is sealed and gift wrapped for every recipient, each wrap with its own
+  // one-time key. Senders who want a copy list themselves as a recipient.
+  private boolean wrap(JSONArray args, CallbackContext callbackContext) throws JSONException {
 
-    keysObjectData.put(publicKey, newKey);
-  }
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
-  private String getCurrentAlias() {
+    JSONObject rumor = Nip59.createRumor(args.getJSONObject(0), unlockedKey.getPublicKey());
+    JSONArray recipients = args.getJSONArray(1);
+    List<Future<JSONObject>> futures = new ArrayList<>(recipients.length());
+
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
     try {
-      String keysData = getKeysStringData();
-      JSONObject keysObjectData = getKeysObjectData(keysData);
-      return keysObjectData.getString(CURRENT_ALIAS);
-    } catch (JSONException e) {
-      return "";
+      for (int i = 0; i < recipients.length(); i++) {
+        byte[] recipient = Hex.decode(recipients.getString(i));
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          byte[] conversationKey = keyManager.getConversationKey(unlockedKey.getAlias(), bytePrivateKey, recipient);
+          try {
+            return Nip59.wrap(Nip59.seal(rumor, unlockedKey.getPublicKey(), bytePrivateKey, conversationKey), recipient);
+          } finally {
+            Arrays.fill(conversationKey, (byte) 0);
+          }
+        }));
+      }
+
+      JSONArray wraps = new JSONArray();
+      for (Future<JSONObject> future : futures) {
+        wraps.put(future.get());
+      }
+
+      JSONObject response = new JSONObject();
+      response.put("rumor", rumor);
+      response.put("wraps", wraps);
+      callbackContext.success(response);
+    } catch (ExecutionException e) {
+      callbackContext.error(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callbackContext.error("Interrupted");
+      return false;
+    } finally {
+      for (Future<JSONObject> future : futures) {
+        future.cancel(true);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
     }
+
+    return true;
   }
 
-  private String getKeysStringData() {
-    byte[] keys = readValues(getContext(), KEYS_ALIAS);
-    return new String(keys);
+  // Opens NIP-59 gift wraps in parallel. Results come in chunks like decryptBatch, {rumor} for
+  // each wrap that passed every check and {error} for the rest.
+  private boolean unwrapBatch(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 2));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
+
+    JSONArray giftWraps = args.getJSONArray(0);
+    int chunkSize = Math.max(1, args.optInt(1, DEFAULT_CHUNK_SIZE));
+    List<Future<JSONObject>> futures = new ArrayList<>(giftWraps.length());
+
+    String alias = unlockedKey.getAlias();
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    try {
+      for (int i = 0; i < giftWraps.length(); i++) {
+        JSONObject giftWrap = giftWraps.optJSONObject(i);
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          if (giftWrap == null) {
+            throw new JSONException("Item is not an object");
+          }
+          // unwrap only reads the key, the tasks share the batch copy that is wiped below.
+          return Nip59.unwrap(giftWrap, bytePrivateKey, eventVerifier, author -> keyManager.getConversationKey(alias, bytePrivateKey, author));
+        }));
+      }
+
+      int offset = 0;
+      JSONArray chunk = new JSONArray();
+      for (int i = 0; i < futures.size(); i++) {
+        chunk.put(getBatchItem(futures.get(i), "rumor"));
+        if (chunk.length() == chunkSize && i < futures.size() - 1) {
+          sendChunk(callbackContext, offset, chunk, false);
+          offset = i + 1;
+          chunk = new JSONArray();
+        }
+      }
+      sendChunk(callbackContext, offset, chunk, true);
+    } finally {
+      for (Future<JSONObject> future : futures) {
+        future.cancel(true);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
+
+    return true;
   }
 
-  private JSONObject getKeysObjectData(String stringData) throws JSONException {
-    if (stringData != null && !stringData.equals("")) {
-      return new JSONObject(stringData);
+  private JSONObject getBatchItem(Future<?> future, String name) throws JSONException {
+    try {
+      JSONObject result = new JSONObject();
+      result.put(name, future.get());
+      return result;
+    } catch (ExecutionException e) {
+      return initErrorJSONObject(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return initErrorJSONObject("Interrupted");
     }
-    return new JSONObject();
   }
 
-  private void savePrivateKey(String alias, String input) {
+  private void sendChunk(CallbackContext callbackContext, int offset, JSONArray results, boolean done) throws JSONException {
+    JSONObject chunk = new JSONObject();
+    chunk.put("offset", offset);
+    chunk.put("results", results);
+    chunk.put("done", done);
+
+    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, chunk);
+    pluginResult.setKeepCallback(!done);
+    callbackContext.sendPluginResult(pluginResult);
+  }
+
+  private boolean lock(CallbackContext callbackContext) {
+    lockSession();
+    callbackContext.success();
+    return true;
+  }
+
+  private boolean warmUpSecrets(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    UnlockedKey unlockedKey = unlockKey(optPublicKey(args, 1));
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
+    }
 
+    JSONArray publicKeys = args.getJSONArray(0);
+    List<Future<?>> futures = new ArrayList<>(publicKeys.length());
+    String alias = unlockedKey.getAlias();
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
     try {
+      for (int i = 0; i < publicKeys.length(); i++) {
+        String publicKey = publicKeys.optString(i);
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          byte[] conversationKey = keyManager.getConversationKey(alias, bytePrivateKey, Hex.decode(publicKey));
+          Arrays.fill(conversationKey, (byte) 0);
+        }));
+      }
 
-      KeyStore keyStore = KeyStore.getInstance(getKeyStore());
-      keyStore.load(null);
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Log.e(TAG, "Exception: " + e.getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
 
-      if (!keyStore.containsAlias(alias)) {
-        Calendar start = Calendar.getInstance();
-        Calendar end = Calendar.getInstance();
-        end.add(Calendar.YEAR, 1);
-        KeyPairGeneratorSpec spec = new KeyPairGeneratorSpec.Builder(getContext()).setAlias(alias)
-                .setSubject(new X500Principal("CN=" + alias)).setSerialNumber(BigInteger.ONE)
-                .setStartDate(start.getTime()).setEndDate(end.getTime()).build();
+    callbackContext.success(initCacheStatsJSONObject());
 
-        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", getKeyStore());
-        generator.initialize(spec);
+    return true;
+  }
+
+  private boolean verifyEvents(JSONArray args, CallbackContext callbackContext) throws JSONException {
 
-        KeyPair keyPair = generator.generateKeyPair();
+    JSONArray events = args.getJSONArray(0);
+    boolean useCache = args.optBoolean(1, true);
+    boolean[] results = new boolean[events.length()];
 
-        Log.i(TAG, "created new key pairs");
+    // One contiguous slice of the batch per compute thread.
+    int slices = Math.min(results.length, Runtime.getRuntime().availableProcessors());
+    List<Future<?>> futures = new ArrayList<>(slices);
+    try {
+      for (int slice = 0; slice < slices; slice++) {
+        int from = results.length * slice / slices;
+        int to = results.length * (slice + 1) / slices;
+        futures.add(pluginExecutor.getComputePool().submit(() -> {
+          for (int i = from; i < to; i++) {
+            results[i] = eventVerifier.verify(events.optJSONObject(i), useCache);
+          }
+        }));
       }
 
-      PublicKey publicKey = keyStore.getCertificate(alias).getPublicKey();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      callbackContext.error(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callbackContext.error("Interrupted");
+      return false;
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
 
-      if (input.isEmpty()) {
-        Log.d(TAG, "Exception: input text is empty");
-        return;
+    int valid = 0;
+    for (boolean result : results) {
+      if (result) {
+        valid++;
       }
+    }
 
-      Cipher cipher = Cipher.getInstance(RSA_ALGORITHM);
-      cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher);
-      cipherOutputStream.write(input.getBytes(StandardCharsets.UTF_8));
-      cipherOutputStream.close();
-      byte[] vals = outputStream.toByteArray();
+    JSONObject response = new JSONObject();
+    response.put("count", results.length);
+    response.put("valid", valid);
+    response.put("bitmap", Base64.toBase64String(EventVerifier.toBitmap(results)));
 
-      writeValues(getContext(), alias, vals);
-      Log.i(TAG, "key created and stored successfully");
+    callbackContext.success(response);
 
-    } catch (Exception e) {
-      Log.e(TAG, "Exception: " + e.getMessage());
+    return true;
+  }
+
+  private boolean mineEvent(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    JSONObject options = args.optJSONObject(2);
+    UnlockedKey unlockedKey = unlockKey(options != null ? options.optString("pubkey", null) : null);
+    if (unlockedKey == null) {
+      callbackContext.error(getMissingKeyMessage());
+      return false;
     }
 
+    JSONObject jsonObject = args.getJSONObject(0);
+    int difficulty = args.getInt(1);
+    String jobId = options != null ? options.optString("jobId") : "";
+    long timeout = options != null ? options.optLong("timeout", DEFAULT_JOB_TIMEOUT) : DEFAULT_JOB_TIMEOUT;
+
+    // A nonce tag sent by the caller is replaced by the mined one.
+    JSONArray tags = new JSONArray();
+    JSONArray eventTags = jsonObject.getJSONArray("tags");
+    for (int i = 0; i < eventTags.length(); i++) {
+      JSONArray tag = eventTags.getJSONArray(i);
+      if (!"nonce".equals(tag.optString(0))) {
+        tags.put(tag);
+      }
+    }
+
+    PowMiner miner = new PowMiner(unlockedKey.getPublicKey(), jsonObject.getLong("created_at"), jsonObject.getInt("kind"), tags, jsonObject.getString("content"), difficulty);
+
+    // Copied now, a lock while mining must not leave the result unsigned.
+    byte[] bytePrivateKey = unlockedKey.copyPrivateKey();
+    SearchJob job = new SearchJob(pluginExecutor, timeout, PROGRESS_INTERVAL, miner::stop, miner::isFinished, new SearchJob.Listener() {
+      @Override
+      public void onProgress(long elapsed) throws JSONException {
+        sendMiningProgress(callbackContext, miner, elapsed);
+      }
+
+      @Override
+      public void onFinish(boolean timedOut) throws JSONException {
+        if (!jobId.isEmpty()) {
+          jobs.remove(jobId);
+        }
+        try {
+          PowMiner.Result result = miner.getResult();
+          if (result == null) {
+            callbackContext.error(timedOut ? "Mining timed out" : "Mining cancelled");
+            return;
+          }
+
+          tags.put(miner.nonceTag(result.getNonce()));
+          jsonObject.put("tags", tags);
+          keyManager.signEvent(jsonObject, unlockedKey, bytePrivateKey);
+          callbackContext.success(jsonObject);
+        } catch (Exception e) {
+          Log.e(TAG, "Exception: " + e.getMessage());
+          callbackContext.error(e.getMessage());
+        } finally {
+          Arrays.fill(bytePrivateKey, (byte) 0);
+        }
+      }
+    });
+
+    if (!jobId.isEmpty()) {
+      jobs.put(jobId, miner::stop);
+    }
+    // The workers report back through the job, this thread is free for the next bulk action.
+    int workers = Runtime.getRuntime().availableProcessors();
+    try {
+      job.start(workers, index -> miner.mine(index, workers));
+    } catch (RejectedExecutionException e) {
+      if (!jobId.isEmpty()) {
+        jobs.remove(jobId);
+      }
+      Arrays.fill(bytePrivateKey, (byte) 0);
+      callbackContext.error(BUSY_MESSAGE);
+      return false;
+    }
+
+    return true;
+  }
+
+  private void sendMiningProgress(CallbackContext callbackContext, PowMiner miner, long elapsed) throws JSONException {
+    JSONObject progress = new JSONObject();
+    progress.put("hashes", miner.getHashes());
+    progress.put("hashRate", elapsed > 0 ? miner.getHashes() * 1000 / elapsed : 0);
+    progress.put("bestDifficulty", miner.getBestDifficulty());
+    progress.put("elapsed", elapsed);
+    sendProgress(callbackContext, progress);
   }
 
-  private String getPrivateKey(String alias) {
+  private boolean generateVanityKey(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    VanitySearch search;
     try {
-      KeyStore keyStore = KeyStore.getInstance(getKeyStore());
-      keyStore.load(null);
-      PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, null);
+      search = new VanitySearch(args.getString(0));
+    } catch (IllegalArgumentException e) {
+      callbackContext.error(e.getMessage());
+      return false;
+    }
+
+    JSONObject options = args.optJSONObject(1);
+    String jobId = options != null ? options.optString("jobId") : "";
+    long timeout = options != null ? options.optLong("timeout", DEFAULT_JOB_TIMEOUT) : DEFAULT_JOB_TIMEOUT;
+    String name = options != null ? options.optString("name") : "";
+
+    SearchJob job = new SearchJob(pluginExecutor, timeout, PROGRESS_INTERVAL, search::stop, search::isFinished, new SearchJob.Listener() {
+      @Override
+      public void onProgress(long elapsed) throws JSONException {
+        JSONObject progress = new JSONObject();
+        progress.put("attempts", search.getAttempts());
+        progress.put("keyRate", elapsed > 0 ? search.getAttempts() * 1000 / elapsed : 0);
+        progress.put("expectedAttempts", search.getExpectedAttempts());
+        progress.put("elapsed", elapsed);
+        sendProgress(callbackContext, progress);
+      }
 
-      Cipher output = Cipher.getInstance(RSA_ALGORITHM);
-      output.init(Cipher.DECRYPT_MODE, privateKey);
-      CipherInputStream cipherInputStream = new CipherInputStream(new ByteArrayInputStream(readValues(getContext(), alias)), output);
+      @Override
+      public void onFinish(boolean timedOut) throws JSONException {
+        if (!jobId.isEmpty()) {
+          jobs.remove(jobId);
+        }
+        byte[] bytePrivateKey = search.getResult();
+        if (bytePrivateKey == null) {
+          callbackContext.error(timedOut ? "Search timed out" : "Search cancelled");
+          return;
+        }
 
-      ArrayList<Byte> values = new ArrayList<>();
-      int nextByte;
-      while ((nextByte = cipherInputStream.read()) != -1) {
-        values.add((byte) nextByte);
+        String privateKey;
+        try {
+          privateKey = encodeBytes("nsec", bytePrivateKey, Encoding.Bech32);
+        } finally {
+          Arrays.fill(bytePrivateKey, (byte) 0);
+        }
+        // Saved like any other new key, in order with the actions that change keys.
+        submitOrdered(() -> saveKey(privateKey, name, callbackContext), holdOrderedLane(), callbackContext);
       }
-      byte[] bytes = new byte[values.size()];
-      for (int i = 0; i < bytes.length; i++) {
-        bytes[i] = values.get(i);
+    });
+
+    if (!jobId.isEmpty()) {
+      jobs.put(jobId, search::stop);
+    }
+    try {
+      job.start(Runtime.getRuntime().availableProcessors(), index -> search.search());
+    } catch (RejectedExecutionException e) {
+      if (!jobId.isEmpty()) {
+        jobs.remove(jobId);
       }
+      callbackContext.error(BUSY_MESSAGE);
+      return false;
+    }
+
+    return true;
+  }
 
-      return new String(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+  private void sendProgress(CallbackContext callbackContext, JSONObject progress) throws JSONException {
+    progress.put("done", false);
 
-    } catch (Exception e) {
-      Log.e(TAG, "Exception: " + e.getMessage());
-      return "";
+    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, progress);
+    pluginResult.setKeepCallback(true);
+    callbackContext.sendPluginResult(pluginResult);
+  }
+
+  private boolean cancelJob(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    Runnable cancel = jobs.get(args.getString(0));
+    if (cancel != null) {
+      cancel.run();
     }
+    callbackContext.success();
+    return true;
   }
 
-  private Context getContext() {
-    return cordova.getActivity().getApplicationContext();
+  private boolean getCacheStats(CallbackContext callbackContext) throws JSONException {
+    callbackContext.success(initCacheStatsJSONObject());
+    return true;
   }
 
-  private String getKeyStore() {
-    try {
-      KeyStore.getInstance(KEYSTORE_PROVIDER_1);
-      return KEYSTORE_PROVIDER_1;
-    } catch (Exception err) {
+  private boolean nip19Encode(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    JSONArray entities = args.getJSONArray(0);
+    JSONArray results = new JSONArray();
+    for (int i = 0; i < entities.length(); i++) {
       try {
-        KeyStore.getInstance(KEYSTORE_PROVIDER_2);
-        return KEYSTORE_PROVIDER_2;
+        results.put(Nip19.encode(entities.getJSONObject(i)));
       } catch (Exception e) {
-        return KEYSTORE_PROVIDER_3;
+        results.put(initErrorJSONObject(e.getMessage()));
       }
     }
+
+    callbackContext.success(results);
+
+    return true;
+  }
+
+  private boolean nip19Decode(JSONArray args, CallbackContext callbackContext) throws JSONException {
+
+    JSONArray entities = args.getJSONArray(0);
+    JSONArray results = new JSONArray();
+    for (int i = 0; i < entities.length(); i++) {
+      try {
+        results.put(Nip19.decode(entities.getString(i)));
+      } catch (Exception e) {
+        results.put(initErrorJSONObject(e.getMessage()));
+      }
+    }
+
+    callbackContext.success(results);
+
+    return true;
+  }
+
+  private boolean getMetrics(CallbackContext callbackContext) throws JSONException {
+    JSONObject metrics = Metrics.toJSONObject();
+    metrics.put("caches", initCacheStatsJSONObject());
+    callbackContext.success(metrics);
+    return true;
+  }
+
+  // Clears the recorded metrics, an optional boolean turns recording on or off.
+  private boolean resetMetrics(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    if (!args.isNull(0)) {
+      Metrics.setEnabled(args.getBoolean(0));
+    }
+    Metrics.reset();
+    callbackContext.success();
+    return true;
+  }
+
+  // Apps that asked SignerProvider for keys, with the decision made for each so far.
+  private boolean listSigners(CallbackContext callbackContext) throws JSONException {
+    callbackContext.success(SignerApprovals.get(getContext()).toJSONObject());
+    return true;
+  }
+
+  // Takes [packageName, account, operation, approved]. Forgets the decision when approved is null,
+  // for all operations of the account when operation is null too, and for all accounts of the
+  // app when account is null as well.
+  private boolean setSignerApproval(JSONArray args, CallbackContext callbackContext) throws JSONException {
+    String packageName = args.getString(0);
+    String account = optPublicKey(args, 1);
+    SignerProvider.Operation operation = null;
+    if (!args.isNull(2)) {
+      operation = SignerProvider.Operation.Companion.of(args.getString(2));
+      if (operation == null) {
+        callbackContext.error("Unknown operation");
+        return false;
+      }
+    }
+    SignerApprovals signerApprovals = SignerApprovals.get(getContext());
+    boolean stored;
+    if (args.isNull(3)) {
+      stored = signerApprovals.remove(packageName, account, operation);
+    } else if (account == null || operation == null) {
+      callbackContext.error("Account and operation are required");
+      return false;
+    } else {
+      stored = signerApprovals.set(packageName, account, operation, args.getBoolean(3));
+    }
+    if (!stored) {
+      callbackContext.error("Approval couldn't be stored");
+      return false;
+    }
+    callbackContext.success(signerApprovals.toJSONObject());
+    return true;
+  }
+
+  // Sends {packageName, account, operation} whenever an app asks the signer provider for an
+  // operation and account it has no decision for, so the app can ask the user and answer with
+  // setSignerApproval. Replaces the callback of an earlier call.
+  private boolean watchSignerRequests(CallbackContext callbackContext) {
+    SignerApprovals.get(getContext()).setListener((packageName, account, operation) -> {
+      try {
+        JSONObject request = new JSONObject();
+        request.put("packageName", packageName);
+        request.put("account", account);
+        request.put("operation", operation.name());
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, request);
+        pluginResult.setKeepCallback(true);
+        callbackContext.sendPluginResult(pluginResult);
+      } catch (JSONException e) {
+        Log.e(TAG, "Exception: " + e.getMessage());
+      }
+    });
+
+    PluginResult pluginResult = new PluginResult(PluginResult.Status.NO_RESULT);
+    pluginResult.setKeepCallback(true);
+    callbackContext.sendPluginResult(pluginResult);
+    return true;
+  }
+
+  private JSONObject initCacheStatsJSONObject() throws JSONException {
+    JSONObject stats = new JSONObject();
+    stats.put("nip04", keyManager.getSharedSecretCache().getStats());
+    stats.put("nip44", keyManager.getConversationKeyCache().getStats());
+    stats.put("verified", eventVerifier.getStats());
+    return stats;
+  }
+
+  private byte[] getSharedSecret(UnlockedKey unlockedKey, byte[] publicKey) {
+    return keyManager.getSharedSecret(unlockedKey, publicKey);
+  }
+
+  private byte[] getConversationKey(UnlockedKey unlockedKey, byte[] publicKey) {
+    return keyManager.getConversationKey(unlockedKey, publicKey);
+  }
+
+  private void lockSession() {
+    keyManager.lock();
+  }
+
+  // Keys are missing for a reason the app should show when the stored values were unreadable.
+  private String getMissingKeyMessage() {
+    String vaultError = KeyStorage.getVaultError(getContext());
+    return vaultError != null ? vaultError : "Key doesn't exist";
+  }
+
+  private UnlockedKey unlockKey(String requestedAlias) {
+    return keyManager.unlockKey(requestedAlias);
+  }
+
+  private String optPublicKey(JSONArray args, int index) {
+    return args.isNull(index) ? null : args.optString(index);
+  }
+
+  private String optPublicKey(CordovaArgs args, int index) {
+    return args.isNull(index) ? null : args.optString(index);
+  }
+
+  private String getCurrentAlias() {
+    return keyRegistry.getCurrentAlias();
+  }
+
+  private Context getContext() {
+    return cordova.getActivity().getApplicationContext();
+  }
+
+  // Keeps later actions on the ordered lane until the returned release runs, for ordered actions
+  // whose change happens after they return: once a dialog is answered or a search is done.
+  // Releasing more than once is harmless.
+  private Runnable holdOrderedLane() {
+    pendingOrderedActions.incrementAndGet();
+    AtomicBoolean released = new AtomicBoolean();
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        pendingOrderedActions.decrementAndGet();
+      }
+    };
+  }
+
+  // Runs a key change on the ordered lane, then releases the hold taken for it.
+  private void submitOrdered(Runnable task, Runnable release, CallbackContext callbackContext) {
+    try {
+      pluginExecutor.submit(PluginExecutor.Priority.ORDERED, () -> {
+        try {
+          task.run();
+        } finally {
+          release.run();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      release.run();
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, BUSY_MESSAGE));
+    }
   }
 
   private synchronized void addKeyPrompt(CallbackContext callbackContext) {
 
+    Runnable release = holdOrderedLane();
     Runnable runnable = () -> {
       AlertDialog.Builder alertDialogBuilder = initAlertDialog("Paste your nsec1... string below, or generate a new one. Your keys are stored in an encrypted form and cannot be accessed without your permission.", "Enter your private key");
 
@@ -514,10 +1349,10 @@ public class Nostr extends CordovaPlugin {
       TextInputLayout nsecPromptInput = initInput("");
       initAddKeyInputs(alertDialogBuilder, namePromptInput, nsecPromptInput);
 
-      setNegativeButton(alertDialogBuilder, "Cancel", callbackContext, PluginResult.Status.ERROR);
-      setAddKeyPositiveButton(alertDialogBuilder, "Save", namePromptInput, nsecPromptInput, callbackContext);
+      setNegativeButton(alertDialogBuilder, "Cancel", callbackContext, PluginResult.Status.ERROR, release);
+      setAddKeyPositiveButton(alertDialogBuilder, "Save", namePromptInput, nsecPromptInput, callbackContext, release);
       setNeutralButton(alertDialogBuilder, "Generate");
-      setOnCancelListener(alertDialogBuilder, callbackContext, PluginResult.Status.ERROR);
+      setOnCancelListener(alertDialogBuilder, callbackContext, PluginResult.Status.ERROR, release);
 
       AlertDialog alertDialog = showAlertDialog(alertDialogBuilder);
       setOnClickNeutralButtonListener(alertDialog, nsecPromptInput);
@@ -565,17 +1400,78 @@ public class Nostr extends CordovaPlugin {
     return alertDialog;
   }
 
-  private void setQrCodeToAlertDialog(AlertDialog.Builder alertDialog, String message) {
-    try {
-      MultiFormatWriter multiFormatWriter = new MultiFormatWriter();
-      BitMatrix bitMatrix = multiFormatWriter.encode(message, BarcodeFormat.QR_CODE, 500, 500);
-      BarcodeEncoder barcodeEncoder = new BarcodeEncoder();
-      final Bitmap bitmap = barcodeEncoder.createBitmap(bitMatrix);
-      ImageView imageView = new ImageView(getContext());
+  // Scaled with the display density, and kept within the screen on small displays.
+  private int getQrCodeSize() {
+    DisplayMetrics displayMetrics = getContext().getResources().getDisplayMetrics();
+    int maxSize = Math.min(displayMetrics.widthPixels, displayMetrics.heightPixels) * 4 / 5;
+    return Math.min(Math.round(QR_CODE_SIZE_DP * displayMetrics.density), maxSize);
+  }
+
+  private ImageView setQrCodePlaceholder(AlertDialog.Builder alertDialog, int size) {
+    ImageView imageView = new ImageView(getContext());
+    imageView.setMinimumHeight(size);
+    imageView.setBackgroundColor(Color.WHITE);
+    alertDialog.setView(imageView);
+    return imageView;
+  }
+
+  private void renderQrCode(ImageView imageView, String message, int size) {
+    Bitmap bitmap = createQrCode(message, size);
+    if (bitmap == null) {
+      return;
+    }
+
+    // The view's tag holds the shown bitmap, or QR_CODE_RELEASED once the dialog is gone. It is
+    // only touched on the UI thread.
+    this.cordova.getActivity().runOnUiThread(() -> {
+      if (imageView.getTag() == QR_CODE_RELEASED) {
+        recycleQrCode(bitmap);
+        return;
+      }
+      imageView.setTag(bitmap);
       imageView.setImageBitmap(bitmap);
-      alertDialog.setView(imageView);
+    });
+  }
+
+  private void releaseQrCode(ImageView imageView) {
+    Object bitmap = imageView.getTag();
+    imageView.setTag(QR_CODE_RELEASED);
+    imageView.setImageDrawable(null);
+    if (bitmap instanceof Bitmap) {
+      recycleQrCode((Bitmap) bitmap);
+    }
+  }
+
+  // Clears the pixels before giving the memory back, the code encodes the private key.
+  private void recycleQrCode(Bitmap bitmap) {
+    bitmap.eraseColor(Color.TRANSPARENT);
+    bitmap.recycle();
+  }
+
+  private Bitmap createQrCode(String message, int size) {
+    BitMatrix bitMatrix;
+    try {
+      bitMatrix = new MultiFormatWriter().encode(message, BarcodeFormat.QR_CODE, size, size);
     } catch (WriterException e) {
-      e.printStackTrace();
+      Log.e(TAG, "Exception: " + e.getMessage());
+      return null;
+    }
+
+    int width = bitMatrix.getWidth();
+    int height = bitMatrix.getHeight();
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        pixels[offset + x] = bitMatrix.get(x, y) ? Color.BLACK : Color.WHITE;
+      }
+    }
+    bitMatrix.clear();
+
+    try {
+      return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    } finally {
+      Arrays.fill(pixels, 0);
     }
   }
 
@@ -603,37 +1499,39 @@ public class Nostr extends CordovaPlugin {
 
     String publicKey = new String(generatePublicKey(privateKey), StandardCharsets.UTF_8);
 
-    try {
-      String keysData = getKeysStringData();
-      JSONObject keysObjectData = getKeysObjectData(keysData);
-      if (existKey(publicKey, keysObjectData.names())) {
-        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key already exist"));
-        return;
-      }
-//                if (existKeyName(publicKey, keyName, keysObjectData)) {
-//                  callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Name already exist"));
-//                  return;
-//                }
-      saveCurrentAlias(keysObjectData, keyName, publicKey);
-    } catch (JSONException e) {
-      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Something went wrong"));
+    if (keyRegistry.contains(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key already exist"));
+      return;
+    }
+//    if (keyRegistry.existsName(publicKey, keyName)) {
+//      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Name already exist"));
+//      return;
+//    }
+    // The secret is on disk before the key shows up in the metadata.
+    if (!keyManager.savePrivateKey(publicKey, privateKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key couldn't be stored"));
       return;
     }
 
-    savePrivateKey(publicKey, privateKey);
+    // Without its metadata the secret would be unreachable, so it is removed again.
+    if (!keyRegistry.add(publicKey, keyName)) {
+      keyManager.deleteKey(publicKey);
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key couldn't be stored"));
+      return;
+    }
 
     JSONObject result = initResponseJSONObject(publicKey);
     callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
   }
 
-  private void setAddKeyPositiveButton(AlertDialog.Builder alertDialog, String buttonLabel, TextInputLayout namePromptInput, TextInputLayout nsecPromptInput, CallbackContext callbackContext) {
+  private void setAddKeyPositiveButton(AlertDialog.Builder alertDialog, String buttonLabel, TextInputLayout namePromptInput, TextInputLayout nsecPromptInput, CallbackContext callbackContext, Runnable release) {
     alertDialog.setPositiveButton(buttonLabel,
             (dialog, which) -> {
               dialog.dismiss();
               String privateKey = nsecPromptInput.getEditText() != null ? nsecPromptInput.getEditText().getText().toString().trim() : "";
               String keyName = namePromptInput.getEditText() != null ? namePromptInput.getEditText().getText().toString().trim() : "";
 
-              saveKey(privateKey, keyName, callbackContext);
+              submitOrdered(() -> saveKey(privateKey, keyName, callbackContext), release, callbackContext);
             });
   }
 
@@ -664,38 +1562,53 @@ public class Nostr extends CordovaPlugin {
             });
   }
 
-  private void setPositiveDeleteButton(AlertDialog.Builder alertDialog, String buttonLabel, JSONObject keysObjectData, String publicKey, CallbackContext callbackContext) {
+  private void setPositiveDeleteButton(AlertDialog.Builder alertDialog, String buttonLabel, String publicKey, CallbackContext callbackContext, Runnable release) {
     alertDialog.setPositiveButton(buttonLabel,
             (dialog, which) -> {
               dialog.dismiss();
 
-              keysObjectData.remove(publicKey);
-              try {
-                String currentKey = keysObjectData.getString(CURRENT_ALIAS);
-                if (currentKey.equals(publicKey)) {
-                  keysObjectData.put(CURRENT_ALIAS, "");
-                }
-              } catch (JSONException e) {
-                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Something went wrong"));
-              }
+              submitOrdered(() -> removeKey(publicKey, callbackContext), release, callbackContext);
+            });
+  }
 
-              removeValues(getContext(), publicKey);
+  private void removeKey(String publicKey, CallbackContext callbackContext) {
+    if (!keyManager.deleteKey(publicKey)) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Key couldn't be deleted"));
+      return;
+    }
 
-              callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, keysObjectData));
-            });
+    try {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, keyRegistry.toJSONObject()));
+    } catch (JSONException e) {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Something went wrong"));
+    }
   }
 
   private void setNegativeButton(AlertDialog.Builder alertDialog, String buttonLabel, CallbackContext callbackContext, PluginResult.Status status) {
+    setNegativeButton(alertDialog, buttonLabel, callbackContext, status, null);
+  }
+
+  private void setNegativeButton(AlertDialog.Builder alertDialog, String buttonLabel, CallbackContext callbackContext, PluginResult.Status status, Runnable release) {
     alertDialog.setNegativeButton(buttonLabel,
             (dialog, which) -> {
               dialog.dismiss();
+              if (release != null) {
+                release.run();
+              }
               callbackContext.sendPluginResult(new PluginResult(status));
             });
   }
 
   private void setOnCancelListener(AlertDialog.Builder alertDialog, CallbackContext callbackContext, PluginResult.Status status) {
+    setOnCancelListener(alertDialog, callbackContext, status, null);
+  }
+
+  private void setOnCancelListener(AlertDialog.Builder alertDialog, CallbackContext callbackContext, PluginResult.Status status, Runnable release) {
     alertDialog.setOnCancelListener(dialog -> {
       dialog.dismiss();
+      if (release != null) {
+        release.run();
+      }
       callbackContext.sendPluginResult(new PluginResult(status));
     });
   }
@@ -712,6 +1625,12 @@ public class Nostr extends CordovaPlugin {
     return result;
   }
 
+  private JSONObject initErrorJSONObject(String message) throws JSONException {
+    final JSONObject result = new JSONObject();
+    result.put("error", message != null ? message : "Something went wrong");
+    return result;
+  }
+
   @SuppressLint("NewApi")
   private AlertDialog.Builder createDialog(CordovaInterface cordova) {
     int currentApiVersion = android.os.Build.VERSION.SDK_INT;
@@ -751,8 +1670,12 @@ public class Nostr extends CordovaPlugin {
   }
 
   private byte[] generatePublicKey(String privateKey) {
-    byte[] bytes = pubkeyCreate(getBytePrivateKey(privateKey));
-    return Hex.encode(bytes);
+    byte[] bytePrivateKey = getBytePrivateKey(privateKey);
+    try {
+      return Hex.encode(pubkeyCreate(bytePrivateKey));
+    } finally {
+      Arrays.fill(bytePrivateKey, (byte) 0);
+    }
   }
 
   private byte[] getBytePrivateKey(String privateKey) {
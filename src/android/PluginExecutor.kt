@@ -0,0 +1,100 @@
+package com.nostr.band.keyStore;
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+// Runs plugin actions off the WebView bridge thread. Interactive and bulk actions get separate
+// lanes so a running batch never delays a single call, actions that have to run in call order
+// get a lane with one thread, and all queues are bounded so callers get an error instead of an
+// ever-growing backlog.
+class PluginExecutor {
+
+    enum class Priority {
+        INTERACTIVE,
+        BULK,
+        ORDERED
+    }
+
+    private val interactive = lane("nostr-interactive", INTERACTIVE_THREADS, INTERACTIVE_CAPACITY, Thread.NORM_PRIORITY)
+
+    private val bulk = lane("nostr-bulk", BULK_THREADS, BULK_CAPACITY, Thread.MIN_PRIORITY)
+
+    private val ordered = lane("nostr-ordered", 1, ORDERED_CAPACITY, Thread.NORM_PRIORITY)
+
+    // Data-parallel parts of bulk actions. Kept apart from the lanes so a batch waiting on its
+    // parts never holds up the threads that pick up new actions. The queue is bounded: once it is
+    // full the submitting thread runs the part itself, which keeps a large batch from queueing
+    // all of its parts at once.
+    val computePool: ExecutorService = ThreadPoolExecutor(
+            COMPUTE_THREADS,
+            COMPUTE_THREADS,
+            0L,
+            TimeUnit.MILLISECONDS,
+            ArrayBlockingQueue(COMPUTE_THREADS * COMPUTE_QUEUE_PER_THREAD),
+            threadFactory("nostr-compute", Thread.MIN_PRIORITY),
+            ThreadPoolExecutor.CallerRunsPolicy()
+    )
+
+    // Workers of searches that run until they find something, see [SearchJob]. Apart from the
+    // compute pool so a running search never holds up the parts of a batch.
+    val jobPool: ExecutorService = lane("nostr-job", Runtime.getRuntime().availableProcessors(), JOB_CAPACITY, Thread.MIN_PRIORITY)
+
+    // Progress reports and timeouts of searches.
+    val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(threadFactory("nostr-scheduler", Thread.NORM_PRIORITY))
+
+    @Throws(RejectedExecutionException::class)
+    fun submit(priority: Priority, task: Runnable) {
+        when (priority) {
+            Priority.INTERACTIVE -> interactive.execute(task)
+            Priority.BULK -> bulk.execute(task)
+            Priority.ORDERED -> ordered.execute(task)
+        }
+    }
+
+    fun shutdown() {
+        interactive.shutdownNow()
+        bulk.shutdownNow()
+        ordered.shutdownNow()
+        computePool.shutdownNow()
+        jobPool.shutdownNow()
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private const val INTERACTIVE_THREADS = 2
+        private const val INTERACTIVE_CAPACITY = 64
+        private const val BULK_THREADS = 1
+        private const val BULK_CAPACITY = 16
+        private const val ORDERED_CAPACITY = 64
+        private const val JOB_CAPACITY = 64
+        private val COMPUTE_THREADS = Runtime.getRuntime().availableProcessors()
+        private const val COMPUTE_QUEUE_PER_THREAD = 16
+
+        private fun lane(name: String, threads: Int, capacity: Int, priority: Int) = ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                ArrayBlockingQueue(capacity),
+                threadFactory(name, priority),
+                ThreadPoolExecutor.AbortPolicy()
+        )
+
+        private fun threadFactory(name: String, priority: Int): ThreadFactory {
+            val counter = AtomicInteger()
+            return ThreadFactory { runnable ->
+                val thread = Thread(runnable, name + "-" + counter.incrementAndGet())
+                thread.isDaemon = true
+                thread.priority = priority
+                thread
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONArray
+import java.io.ByteArrayOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * NIP-13 proof of work: looks for a ["nonce", <n>, <difficulty>] tag that gives the event id at
+ * least difficulty leading zero bits. See https://github.com/nostr-protocol/nips/blob/master/13.md.
+ *
+ * The nonce tag goes last, so everything up to the nonce digits is hashed once and every attempt
+ * starts from a clone of that digest, followed by the digits and the pre-serialized rest of the event.
+ */
+class PowMiner(
+        pubKey: ByteArray,
+        createdAt: Long,
+        kind: Int,
+        tags: JSONArray,
+        content: String,
+        val difficulty: Int
+) {
+
+    class Result(val nonce: Long, val id: ByteArray)
+
+    private val prefix: MessageDigest = MessageDigest.getInstance("SHA-256")
+
+    private val suffix: ByteArray
+
+    private val result = AtomicReference<Result>()
+
+    private val hashes = AtomicLong()
+
+    private val bestDifficulty = AtomicInteger()
+
+    private val finished = CountDownLatch(1)
+
+    @Volatile
+    private var stopped = false
+
+    init {
+        require(difficulty in 0..256) { "invalid difficulty" }
+
+        // [0,"<pubkey>",<created_at>,<kind>,[<tags>,["nonce","
+        val prefixSerializer = EventSerializer(prefix)
+        prefixSerializer.writeHeader(pubKey, createdAt, kind)
+        prefixSerializer.writeByte('['.code)
+        for (i in 0 until tags.length()) {
+            prefixSerializer.writeTag(tags.getJSONArray(i))
+            prefixSerializer.writeByte(','.code)
+        }
+        prefixSerializer.writeAscii("[\"nonce\",\"")
+        prefixSerializer.flush()
+
+        // ","<difficulty>"]],"<content>"]
+        val collector = ByteCollector()
+        val suffixSerializer = EventSerializer(collector)
+        suffixSerializer.writeAscii("\",\"$difficulty\"]]")
+        suffixSerializer.writeFooter(content)
+        suffix = suffixSerializer.digest()
+    }
+
+    /**
+     * Runs one worker, trying nonces start, start + step, start + 2 * step... until one reaches the
+     * difficulty or the miner is stopped.
+     */
+    fun mine(start: Long, step: Long): Result? {
+        val base = prefix.clone() as MessageDigest
+        val digits = ByteArray(20)
+        val id = ByteArray(32)
+        var nonce = start
+        var count = 0L
+        try {
+            while (!stopped) {
+                hash(base, nonce, digits, id)
+                count++
+                val zeros = countLeadingZeroBits(id)
+                if (zeros >= difficulty) {
+                    val found = Result(nonce, id.copyOf())
+                    if (result.compareAndSet(null, found)) {
+                        stop()
+                    }
+                    return found
+                }
+                if (zeros > bestDifficulty.get()) {
+                    bestDifficulty.accumulateAndGet(zeros, Math::max)
+                }
+                if (count == PROGRESS_BATCH) {
+                    hashes.addAndGet(count)
+                    count = 0
+                }
+                nonce += step
+            }
+            return null
+        } finally {
+            hashes.addAndGet(count)
+        }
+    }
+
+    fun hash(nonce: Long): ByteArray {
+        val id = ByteArray(32)
+        hash(prefix, nonce, ByteArray(20), id)
+        return id
+    }
+
+    private fun hash(base: MessageDigest, nonce: Long, digits: ByteArray, id: ByteArray) {
+        val digest = base.clone() as MessageDigest
+        val start = writeDigits(nonce, digits)
+        digest.update(digits, start, digits.size - start)
+        digest.update(suffix)
+        digest.digest(id, 0, 32)
+    }
+
+    fun stop() {
+        stopped = true
+        finished.countDown()
+    }
+
+    // True once a nonce is found or the miner is stopped.
+    fun isFinished(): Boolean = finished.count == 0L
+
+    fun getResult(): Result? = result.get()
+
+    fun getHashes(): Long = hashes.get()
+
+    fun getBestDifficulty(): Int = bestDifficulty.get()
+
+    fun nonceTag(nonce: Long): JSONArray = JSONArray().put("nonce").put(nonce.toString()).put(difficulty.toString())
+
+    // A digest that only collects its input, to capture the serialized bytes.
+    private class ByteCollector : MessageDigest("collector") {
+        private val output = ByteArrayOutputStream()
+
+        override fun engineUpdate(input: Byte) = output.write(input.toInt())
+
+        override fun engineUpdate(input: ByteArray, offset: Int, len: Int) = output.write(input, offset, len)
+
+        override fun engineDigest(): ByteArray = output.toByteArray().also { output.reset() }
+
+        override fun engineReset() = output.reset()
+    }
+
+    companion object {
+        private const val PROGRESS_BATCH = 4096L
+
+        @JvmStatic
+        fun countLeadingZeroBits(hash: ByteArray): Int {
+            var count = 0
+            for (b in hash) {
+                val value = b.toInt() and 0xff
+                if (value == 0) {
+                    count += 8
+                } else {
+                    return count + Integer.numberOfLeadingZeros(value) - 24
+                }
+            }
+            return count
+        }
+
+        // Writes the decimal digits right-aligned into digits, returns the index of the first one.
+        private fun writeDigits(value: Long, digits: ByteArray): Int {
+            var pos = digits.size
+            var remaining = value
+            do {
+                digits[--pos] = ('0'.code + (remaining % 10).toInt()).toByte()
+                remaining /= 10
+            } while (remaining > 0)
+            return pos
+        }
+    }
+}
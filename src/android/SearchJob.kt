@@ -0,0 +1,110 @@
+package com.nostr.band.keyStore;
+
+import android.util.Log
+import org.json.JSONException
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * A search whose workers run until one finds a result or the search is stopped, like [PowMiner]
+ * and [VanitySearch]. Nothing waits for it: the workers run on the job pool, the scheduler reports
+ * progress every [progressInterval] and stops the search once [timeoutMillis] is over, 0 for no
+ * timeout, and [Listener.onFinish] runs once when the search is done, on the thread that noticed it.
+ */
+class SearchJob(
+        private val executor: PluginExecutor,
+        private val timeoutMillis: Long,
+        private val progressInterval: Long,
+        private val stop: Runnable,
+        private val isFinished: () -> Boolean,
+        private val listener: Listener
+) {
+
+    fun interface Worker {
+        fun run(index: Int)
+    }
+
+    interface Listener {
+        @Throws(JSONException::class)
+        fun onProgress(elapsed: Long)
+
+        // timedOut is false when a worker found a result and when the search was stopped.
+        @Throws(JSONException::class)
+        fun onFinish(timedOut: Boolean)
+    }
+
+    private val start = System.currentTimeMillis()
+
+    private val finished = AtomicBoolean()
+
+    private val futures = ArrayList<Future<*>>()
+
+    private var monitor: ScheduledFuture<*>? = null
+
+    // Starts workers workers and returns right away. Nothing is left running when the pool is full.
+    @Synchronized
+    @Throws(RejectedExecutionException::class)
+    fun start(workers: Int, worker: Worker) {
+        try {
+            for (i in 0 until workers) {
+                futures.add(executor.jobPool.submit {
+                    try {
+                        worker.run(i)
+                    } finally {
+                        if (isFinished()) {
+                            finish(false)
+                        }
+                    }
+                })
+            }
+            monitor = executor.scheduler.scheduleWithFixedDelay(::check, progressInterval, progressInterval, TimeUnit.MILLISECONDS)
+        } catch (e: RejectedExecutionException) {
+            finished.set(true)
+            stop.run()
+            futures.forEach { it.cancel(false) }
+            throw e
+        }
+    }
+
+    private fun check() {
+        if (isFinished()) {
+            // stopped before any worker ran
+            finish(false)
+            return
+        }
+        val elapsed = System.currentTimeMillis() - start
+        if (timeoutMillis > 0 && elapsed >= timeoutMillis) {
+            finish(true)
+            return
+        }
+        try {
+            listener.onProgress(elapsed)
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+    }
+
+    private fun finish(timedOut: Boolean) {
+        if (!finished.compareAndSet(false, true)) {
+            return
+        }
+        stop.run()
+        // Running workers see the stop, queued ones never start.
+        synchronized(this) {
+            monitor?.cancel(false)
+            futures.forEach { it.cancel(false) }
+        }
+        try {
+            listener.onFinish(timedOut)
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+    }
+
+    companion object {
+        private const val TAG = "NostrLogTag"
+    }
+}
@@ -0,0 +1,76 @@
+package com.nostr.band.keyStore;
+
+import org.json.JSONException
+import org.json.JSONObject
+
+// Bounded LRU of secrets shared between one of our keys and a peer, so repeated messages with the
+// same peer skip the EC multiplication. Entries are keyed by both keys, so several accounts can
+// use the cache at the same time.
+class SecretCache(private val capacity: Int) {
+
+    private val entries = object : LinkedHashMap<String, ByteArray>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ByteArray>): Boolean {
+            if (size > capacity) {
+                eldest.value.fill(0)
+                return true
+            }
+            return false
+        }
+    }
+
+    private var hits = 0L
+    private var misses = 0L
+    private var computeNanos = 0L
+
+    // Bumped by clear(), so a secret computed across a lock isn't put back after it.
+    private var generation = 0L
+
+    // Returns a copy of the cached secret, callers wipe it once done.
+    fun get(owner: String, peer: ByteArray, compute: () -> ByteArray): ByteArray {
+        val peerKey = owner + ":" + peer.toHex()
+        val startGeneration: Long
+        synchronized(this) {
+            val secret = entries[peerKey]
+            if (secret != null) {
+                hits++
+                return secret.copyOf()
+            }
+            misses++
+            startGeneration = generation
+        }
+
+        val start = System.nanoTime()
+        val secret = compute()
+        val elapsed = System.nanoTime() - start
+
+        synchronized(this) {
+            computeNanos += elapsed
+            if (generation == startGeneration && !entries.containsKey(peerKey)) {
+                entries[peerKey] = secret.copyOf()
+            }
+        }
+        return secret
+    }
+
+    @Synchronized
+    fun clear() {
+        generation++
+        entries.values.forEach { it.fill(0) }
+        entries.clear()
+    }
+
+    @Synchronized
+    @Throws(JSONException::class)
+    fun getStats(): JSONObject {
+        val requests = hits + misses
+        val averageComputeNanos = if (misses > 0) computeNanos / misses else 0L
+        val stats = JSONObject()
+        stats.put("size", entries.size)
+        stats.put("capacity", capacity)
+        stats.put("hits", hits)
+        stats.put("misses", misses)
+        stats.put("hitRate", if (requests > 0) hits.toDouble() / requests else 0.0)
+        stats.put("savedMs", hits * averageComputeNanos / 1_000_000.0)
+        return stats
+    }
+}
@@ -0,0 +1,213 @@
+package com.nostr.band.keyStore;
+
+import android.content.Context
+import android.util.Log
+import org.json.JSONException
+import org.json.JSONObject
+
+// Which apps may use SignerProvider, with which accounts and for which operations. The host app
+// decides for every (app, account, operation), so an app approved to sign with one account can't
+// use another by naming it, nor decrypt with it. Decisions are kept in memory and on disk so later
+// requests skip the prompt. Requests without a decision are remembered as pending, with a request
+// count, and reported to the listener so the app can ask the user.
+class SignerApprovals private constructor(private val context: Context) {
+
+    enum class Status {
+        PENDING,
+        APPROVED,
+        REJECTED
+    }
+
+    fun interface Listener {
+        fun onPending(packageName: String, account: String, operation: SignerProvider.Operation)
+    }
+
+    private class Caller(var status: Status) {
+        var requests = 0L
+        var lastRequest = 0L
+        var lastNotified = 0L
+    }
+
+    // package name -> account -> operation -> caller
+    private val callers = HashMap<String, HashMap<String, HashMap<SignerProvider.Operation, Caller>>>()
+
+    private var loaded = false
+
+    @Volatile
+    var listener: Listener? = null
+
+    // Counts the request and returns the decision made for it so far. Pending requests are passed
+    // to the listener, at most once per NOTIFY_INTERVAL for the same app, account and operation.
+    fun check(packageName: String, account: String, operation: SignerProvider.Operation): Status {
+        val listener = listener
+        val status: Status
+        var notify = false
+        synchronized(this) {
+            ensureLoaded()
+            val caller = getOrPut(packageName, account, operation)
+            val now = System.currentTimeMillis()
+            caller.requests++
+            caller.lastRequest = now
+            status = caller.status
+            if (status == Status.PENDING && listener != null && now - caller.lastNotified >= NOTIFY_INTERVAL) {
+                caller.lastNotified = now
+                notify = true
+            }
+        }
+        if (notify) {
+            listener?.onPending(packageName, account, operation)
+        }
+        return status
+    }
+
+    // Both return false when the decision couldn't be written, nothing changes then.
+    @Synchronized
+    fun set(packageName: String, account: String, operation: SignerProvider.Operation, approved: Boolean): Boolean {
+        ensureLoaded()
+        val caller = getOrPut(packageName, account, operation)
+        val previousStatus = caller.status
+        caller.status = if (approved) Status.APPROVED else Status.REJECTED
+        if (!flush()) {
+            caller.status = previousStatus
+            return false
+        }
+        return true
+    }
+
+    // Forgets the decision for one operation, for all operations of the account when operation is
+    // null, or for all accounts when account is null too.
+    @Synchronized
+    fun remove(packageName: String, account: String?, operation: SignerProvider.Operation?): Boolean {
+        ensureLoaded()
+        val accounts = callers[packageName] ?: return true
+        val previous = HashMap<String, HashMap<SignerProvider.Operation, Caller>>()
+        accounts.forEach { (key, operations) -> previous[key] = HashMap(operations) }
+        if (account == null) {
+            accounts.clear()
+        } else {
+            val operations = accounts[account] ?: return true
+            if (operation == null) {
+                accounts.remove(account)
+            } else if (operations.remove(operation) == null) {
+                return true
+            } else if (operations.isEmpty()) {
+                accounts.remove(account)
+            }
+        }
+        if (!flush()) {
+            accounts.clear()
+            accounts.putAll(previous)
+            return false
+        }
+        if (accounts.isEmpty()) {
+            callers.remove(packageName)
+        }
+        return true
+    }
+
+    @Synchronized
+    @Throws(JSONException::class)
+    fun toJSONObject(): JSONObject {
+        ensureLoaded()
+        val result = JSONObject()
+        for ((packageName, accounts) in callers) {
+            val accountEntries = JSONObject()
+            for ((account, operations) in accounts) {
+                val operationEntries = JSONObject()
+                for ((operation, caller) in operations) {
+                    val entry = JSONObject()
+                    entry.put("status", caller.status.name.lowercase())
+                    entry.put("requests", caller.requests)
+                    entry.put("lastRequest", caller.lastRequest)
+                    operationEntries.put(operation.name, entry)
+                }
+                accountEntries.put(account, operationEntries)
+            }
+            result.put(packageName, accountEntries)
+        }
+        return result
+    }
+
+    private fun getOrPut(packageName: String, account: String, operation: SignerProvider.Operation): Caller =
+            callers.getOrPut(packageName) { HashMap() }.getOrPut(account) { HashMap() }.getOrPut(operation) { Caller(Status.PENDING) }
+
+    // Decisions stored per account only, before they were made per operation, are dropped: an
+    // approval to sign must not turn into one to decrypt.
+    private fun ensureLoaded() {
+        if (loaded) {
+            return
+        }
+        loaded = true
+
+        val data = String(KeyStorage.readValues(context, SIGNERS_ALIAS))
+        if (data.isEmpty()) {
+            return
+        }
+        try {
+            val json = JSONObject(data)
+            val packageIterator = json.keys()
+            while (packageIterator.hasNext()) {
+                val packageName = packageIterator.next()
+                val accountDecisions = json.optJSONObject(packageName) ?: continue
+                val accountIterator = accountDecisions.keys()
+                while (accountIterator.hasNext()) {
+                    val account = accountIterator.next()
+                    val decisions = accountDecisions.optJSONObject(account) ?: continue
+                    val operationIterator = decisions.keys()
+                    while (operationIterator.hasNext()) {
+                        val name = operationIterator.next()
+                        val operation = SignerProvider.Operation.of(name) ?: continue
+                        getOrPut(packageName, account, operation).status = if (decisions.optBoolean(name)) Status.APPROVED else Status.REJECTED
+                    }
+                }
+            }
+        } catch (e: JSONException) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+    }
+
+    // Only decisions are written, pending requests and counters live in memory. Decisions are
+    // rare, so they are written right away.
+    private fun flush(): Boolean {
+        return try {
+            val json = JSONObject()
+            for ((packageName, accounts) in callers) {
+                val accountDecisions = JSONObject()
+                for ((account, operations) in accounts) {
+                    val decisions = JSONObject()
+                    for ((operation, caller) in operations) {
+                        if (caller.status != Status.PENDING) {
+                            decisions.put(operation.name, caller.status == Status.APPROVED)
+                        }
+                    }
+                    if (decisions.length() > 0) {
+                        accountDecisions.put(account, decisions)
+                    }
+                }
+                if (accountDecisions.length() > 0) {
+                    json.put(packageName, accountDecisions)
+                }
+            }
+            KeyStorage.writeValues(context, SIGNERS_ALIAS, json.toString().toByteArray())
+        } catch (e: JSONException) {
+            Log.e(TAG, "Exception: " + e.message)
+            false
+        }
+    }
+
+    companion object {
+        private const val SIGNERS_ALIAS = "nostrSigners"
+        private const val TAG = "SignerApprovalsLogTag"
+        private const val NOTIFY_INTERVAL = 10_000L
+
+        @Volatile
+        private var instance: SignerApprovals? = null
+
+        @JvmStatic
+        fun get(context: Context): SignerApprovals {
+            return instance ?: synchronized(this) {
+                instance ?: SignerApprovals(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.nostr.band.keyStore;
+
+import android.content.ContentProvider
+import android.content.ContentValues
+import android.content.Context
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.net.Uri
+import android.os.Binder
+import android.os.Bundle
+import android.util.Log
+import org.json.JSONArray
+import org.json.JSONObject
+import org.spongycastle.util.encoders.Hex
+
+/**
+ * NIP-55 style signer for other apps on the device, see
+ * https://github.com/nostr-protocol/nips/blob/master/55.md. Callers need the NOSTR_SIGNER
+ * permission declared in plugin.xml, it uses the same keys, session and caches as the plugin
+ * through [KeyManager].
+ *
+ * query() on content://<package>.<OPERATION> takes the projection [data, peer pubkey, current user]
+ * and returns a "result" column, plus "event" for SIGN_EVENT. call() with the operation as method
+ * takes a JSON array of {data, pubkey} objects in the "items" extra and returns a JSON array of
+ * {result} or {error} objects in the "results" extra, so a batch costs one binder round trip.
+ *
+ * Every request is for one operation with one account, the current user it names or the current
+ * key. Callers the host app hasn't approved for that operation and account yet get null and are
+ * reported to it so it can ask the user, callers it rejected get a "rejected" column or extra, see
+ * [SignerApprovals]. Keys unlocked for a request are wiped once it is done, unless the host app
+ * had them unlocked already.
+ */
+class SignerProvider : ContentProvider() {
+
+    enum class Operation {
+        GET_PUBLIC_KEY,
+        SIGN_EVENT,
+        NIP04_ENCRYPT,
+        NIP04_DECRYPT,
+        NIP44_ENCRYPT,
+        NIP44_DECRYPT;
+
+        val metricName = "signer." + name
+
+        companion object {
+            fun of(name: String?): Operation? = values().firstOrNull { it.name == name }
+        }
+    }
+
+    // Nothing is loaded here, providers are created on the main thread while the app starts.
+    override fun onCreate(): Boolean = true
+
+    override fun query(uri: Uri, projection: Array<String>?, selection: String?, selectionArgs: Array<String>?, sortOrder: String?): Cursor? {
+        val context = context ?: return null
+        val operation = Operation.of(uri.authority?.substringAfterLast('.')) ?: return null
+        val keyManager = KeyManager.get(context)
+        val account = resolveAccount(keyManager, projection?.getOrNull(2)) ?: return null
+
+        when (checkCaller(context, account, operation)) {
+            SignerApprovals.Status.PENDING -> return null
+            SignerApprovals.Status.REJECTED -> return MatrixCursor(arrayOf(REJECTED)).also { it.addRow(arrayOf<Any>("true")) }
+            SignerApprovals.Status.APPROVED -> {}
+        }
+
+        val data = projection?.getOrNull(0) ?: ""
+        val peer = projection?.getOrNull(1)
+
+        val start = Metrics.beginAction(operation.metricName)
+        var failed = true
+        try {
+            val unlockedKey = if (operation == Operation.GET_PUBLIC_KEY) null else keyManager.unlockKey(account, false) ?: return null
+            val result = execute(keyManager, operation, account, unlockedKey, data, peer)
+            val cursor = MatrixCursor(arrayOf(RESULT, SIGNATURE, EVENT))
+            cursor.addRow(arrayOf<Any?>(result.optString(RESULT), result.optString(RESULT), result.optString(EVENT, null)))
+            failed = false
+            return cursor
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+            return null
+        } finally {
+            Metrics.endAction(operation.metricName, start, failed)
+            keyManager.keySession.releaseUntracked()
+        }
+    }
+
+    override fun call(method: String, arg: String?, extras: Bundle?): Bundle? {
+        val context = context ?: return null
+        val operation = Operation.of(method) ?: return null
+        val keyManager = KeyManager.get(context)
+        val account = resolveAccount(keyManager, extras?.getString(CURRENT_USER) ?: arg) ?: return null
+
+        when (checkCaller(context, account, operation)) {
+            SignerApprovals.Status.PENDING -> return null
+            SignerApprovals.Status.REJECTED -> return Bundle().also { it.putBoolean(REJECTED, true) }
+            SignerApprovals.Status.APPROVED -> {}
+        }
+
+        val start = Metrics.beginAction(operation.metricName)
+        var failed = true
+        try {
+            val unlockedKey = if (operation == Operation.GET_PUBLIC_KEY) null else keyManager.unlockKey(account, false) ?: return null
+            val items = JSONArray(extras?.getString(ITEMS) ?: "[]")
+            val results = JSONArray()
+            for (i in 0 until items.length()) {
+                results.put(executeItem(keyManager, operation, account, unlockedKey, items.opt(i)))
+            }
+            failed = false
+            return Bundle().also { it.putString(RESULTS, results.toString()) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception: " + e.message)
+            return null
+        } finally {
+            Metrics.endAction(operation.metricName, start, failed)
+            keyManager.keySession.releaseUntracked()
+        }
+    }
+
+    private fun executeItem(keyManager: KeyManager, operation: Operation, account: String, unlockedKey: UnlockedKey?, item: Any?): JSONObject {
+        return try {
+            if (item !is JSONObject) {
+                throw IllegalArgumentException("Item is not an object")
+            }
+            execute(keyManager, operation, account, unlockedKey, item.optString(DATA), item.optString(PUBKEY, null))
+        } catch (e: Exception) {
+            JSONObject().put(ERROR, e.message ?: "Something went wrong")
+        }
+    }
+
+    // Returns {result} and for signed events {result, event}. unlockedKey is null only for
+    // GET_PUBLIC_KEY. Requests unlock their account once and don't keep it in the session, the host
+    // app may be in the background, so the key is wiped when the request is done.
+    private fun execute(keyManager: KeyManager, operation: Operation, account: String, unlockedKey: UnlockedKey?, data: String, peer: String?): JSONObject {
+        if (unlockedKey == null) {
+            return JSONObject().put(RESULT, account)
+        }
+
+        val result = JSONObject()
+        when (operation) {
+            Operation.SIGN_EVENT -> {
+                val privateKey = unlockedKey.copyPrivateKey()
+                try {
+                    val event = keyManager.signEvent(JSONObject(data), unlockedKey, privateKey)
+                    result.put(RESULT, event.getString("sig"))
+                    result.put(EVENT, event.toString())
+                } finally {
+                    privateKey.fill(0)
+                }
+            }
+            Operation.NIP04_ENCRYPT, Operation.NIP04_DECRYPT -> {
+                val sharedSecret = keyManager.getSharedSecret(unlockedKey, Hex.decode(requirePeer(peer)))
+                try {
+                    result.put(RESULT, if (operation == Operation.NIP04_ENCRYPT) Utils.encrypt(data, sharedSecret) else Utils.decrypt(data, sharedSecret))
+                } finally {
+                    sharedSecret.fill(0)
+                }
+            }
+            Operation.NIP44_ENCRYPT, Operation.NIP44_DECRYPT -> {
+                val conversationKey = keyManager.getConversationKey(unlockedKey, Hex.decode(requirePeer(peer)))
+                try {
+                    result.put(RESULT, if (operation == Operation.NIP44_ENCRYPT) Nip44.encrypt(data, conversationKey) else Nip44.decrypt(data, conversationKey))
+                } finally {
+                    conversationKey.fill(0)
+                }
+            }
+            Operation.GET_PUBLIC_KEY -> {}
+        }
+        return result
+    }
+
+    private fun requirePeer(peer: String?): String {
+        require(!peer.isNullOrEmpty()) { "pubkey is required" }
+        return peer
+    }
+
+    // The account the request is for, the one named by the caller or the current one, resolved
+    // once so the approval checked is the one used. Null when there is no such key.
+    private fun resolveAccount(keyManager: KeyManager, currentUser: String?): String? {
+        val alias = if (currentUser.isNullOrEmpty()) keyManager.keyRegistry.getCurrentAlias() else toHex(currentUser) ?: return null
+        return if (alias.isNotEmpty() && keyManager.keyRegistry.contains(alias)) alias else null
+    }
+
+    // The host app itself is always allowed, other apps need its decision for the operation and account.
+    private fun checkCaller(context: Context, account: String, operation: Operation): SignerApprovals.Status {
+        val caller = getCaller(context) ?: return SignerApprovals.Status.REJECTED
+        if (caller == context.packageName) {
+            return SignerApprovals.Status.APPROVED
+        }
+        return SignerApprovals.get(context).check(caller, account, operation)
+    }
+
+    private fun getCaller(context: Context): String? {
+        try {
+            callingPackage?.let { return it }
+        } catch (e: SecurityException) {
+            Log.e(TAG, "Exception: " + e.message)
+        }
+        return context.packageManager.getPackagesForUid(Binder.getCallingUid())?.firstOrNull()
+    }
+
+    // NIP-55 clients may send the current user as npub, null when it doesn't decode.
+    private fun toHex(publicKey: String): String? {
+        if (!publicKey.startsWith("npub1")) {
+            return publicKey
+        }
+        return try {
+            Bech32.decodeBytes(publicKey).second.toHex()
+        } catch (e: IllegalArgumentException) {
+            Log.e(TAG, "Exception: " + e.message)
+            null
+        }
+    }
+
+    override fun getType(uri: Uri): String? = null
+
+    override fun insert(uri: Uri, values: ContentValues?): Uri? = null
+
+    override fun delete(uri: Uri, selection: String?, selectionArgs: Array<String>?): Int = 0
+
+    override fun update(uri: Uri, values: ContentValues?, selection: String?, selectionArgs: Array<String>?): Int = 0
+
+    companion object {
+        private const val TAG = "SignerProviderLogTag"
+        private const val DATA = "data"
+        private const val PUBKEY = "pubkey"
+        private const val RESULT = "result"
+        private const val SIGNATURE = "signature"
+        private const val EVENT = "event"
+        private const val ERROR = "error"
+        private const val REJECTED = "rejected"
+        private const val CURRENT_USER = "current_user"
+        private const val ITEMS = "items"
+        private const val RESULTS = "results"
+    }
+}
@@ -1,15 +1,9 @@
 package com.nostr.band.keyStore;
 
-import com.google.gson.Gson
-import com.google.gson.GsonBuilder
-import com.google.gson.JsonPrimitive
-import com.google.gson.JsonSerializationContext
-import com.google.gson.JsonSerializer
 import fr.acinq.secp256k1.Secp256k1
+import org.json.JSONArray
 import org.spongycastle.util.encoders.Base64
 import org.spongycastle.util.encoders.Hex
-import java.lang.reflect.Type
-import java.security.MessageDigest
 import java.security.SecureRandom
 import javax.crypto.Cipher
 import javax.crypto.spec.IvParameterSpec
@@ -19,19 +13,18 @@ object Utils {
 
     private val secp256k1 = Secp256k1.get()
 
-    private val sha256: MessageDigest = MessageDigest.getInstance("SHA-256")
-
-    private val gson: Gson = GsonBuilder()
-            .disableHtmlEscaping()
-            .registerTypeAdapter(ByteArray::class.java, ByteArraySerializer())
-            .create()
-
-    class ByteArraySerializer : JsonSerializer<ByteArray> {
-        override fun serialize(
-                src: ByteArray,
-                typeOfSrc: Type?,
-                context: JsonSerializationContext?
-        ) = JsonPrimitive(src.toHex())
+    @JvmStatic
+    fun generateId(
+            pubKey: ByteArray,
+            createdAt: Long,
+            kind: Int,
+            tags: List<List<String>>,
+            content: String
+    ): ByteArray {
+        val serializer = CryptoContext.get().serializer
+        serializer.reset()
+        serializer.writeEvent(pubKey, createdAt, kind, tags, content)
+        return serializer.digest()
     }
 
     @JvmStatic
@@ -39,11 +32,13 @@ object Utils {
             pubKey: ByteArray,
             createdAt: Long,
             kind: Int,
-            tags: List<List<String>>,
+            tags: JSONArray,
             content: String
     ): ByteArray {
-        val rawEventJson = gson.toJson(listOf(0, pubKey.toHex(), createdAt, kind, tags, content));
-        return sha256.digest(rawEventJson.toByteArray())
+        val serializer = CryptoContext.get().serializer
+        serializer.reset()
+        serializer.writeEvent(pubKey, createdAt, kind, tags, content)
+        return serializer.digest()
     }
 
     @JvmStatic
@@ -52,6 +47,10 @@ object Utils {
     @JvmStatic
     fun sign(data: ByteArray, privKey: ByteArray): ByteArray = secp256k1.signSchnorr(data, privKey, null)
 
+    @JvmStatic
+    fun verify(signature: ByteArray, data: ByteArray, pubKey: ByteArray): Boolean =
+            secp256k1.verifySchnorr(signature, data, pubKey)
+
     @JvmStatic
     fun encrypt(msg: String, privateKey: ByteArray, pubKey: ByteArray): String {
         val sharedSecret = getSharedSecret(privateKey, pubKey)
@@ -62,7 +61,7 @@ object Utils {
     fun encrypt(msg: String, sharedSecret: ByteArray): String {
         val iv = ByteArray(16)
         random.nextBytes(iv)
-        val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        val cipher = CryptoContext.get().aesCbc
         cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(sharedSecret, "AES"), IvParameterSpec(iv))
         val ivBase64 = Base64.toBase64String(iv)
         val encryptedMsg = cipher.doFinal(msg.toByteArray())
@@ -78,16 +77,40 @@ object Utils {
 
     @JvmStatic
     fun decrypt(msg: String, sharedSecret: ByteArray): String {
-        val parts = msg.split("?iv=")
-        val iv = parts[1].run { Base64.decode(this) }
-        val encryptedMsg = parts.first().run { Base64.decode(this) }
-        val cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        val separator = msg.indexOf("?iv=")
+        require(separator >= 0) { "invalid payload" }
+        val iv = Base64.decode(msg.substring(separator + 4))
+        val encryptedMsg = Base64.decode(msg.substring(0, separator))
+        val cipher = CryptoContext.get().aesCbc
         cipher.init(Cipher.DECRYPT_MODE, SecretKeySpec(sharedSecret, "AES"), IvParameterSpec(iv))
         return String(cipher.doFinal(encryptedMsg))
     }
 
-    fun getSharedSecret(privateKey: ByteArray, pubKey: ByteArray): ByteArray =
-            secp256k1.pubKeyTweakMul(Hex.decode("02") + pubKey, privateKey).copyOfRange(1, 33)
+    // NIP-04 without the base64 "?iv=" envelope: the 16 bytes iv followed by the ciphertext.
+    @JvmStatic
+    fun encryptBytes(msg: ByteArray, sharedSecret: ByteArray): ByteArray {
+        val iv = ByteArray(16)
+        random.nextBytes(iv)
+        val cipher = CryptoContext.get().aesCbc
+        cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(sharedSecret, "AES"), IvParameterSpec(iv))
+        return iv + cipher.doFinal(msg)
+    }
+
+    @JvmStatic
+    fun decryptBytes(data: ByteArray, sharedSecret: ByteArray): ByteArray {
+        require(data.size > 16) { "invalid payload" }
+        val cipher = CryptoContext.get().aesCbc
+        cipher.init(Cipher.DECRYPT_MODE, SecretKeySpec(sharedSecret, "AES"), IvParameterSpec(data, 0, 16))
+        return cipher.doFinal(data, 16, data.size - 16)
+    }
+
+    @JvmStatic
+    fun getSharedSecret(privateKey: ByteArray, pubKey: ByteArray): ByteArray {
+        val compressedPubKey = ByteArray(33)
+        compressedPubKey[0] = 2
+        pubKey.copyInto(compressedPubKey, 1)
+        return secp256k1.pubKeyTweakMul(compressedPubKey, privateKey).copyOfRange(1, 33)
+    }
 
     private val random = SecureRandom()
 
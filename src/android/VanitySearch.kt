@@ -0,0 +1,109 @@
+package com.nostr.band.keyStore;
+
+import java.security.SecureRandom
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Looks for a random key whose npub starts with a given prefix. Each bech32 character after
+ * "npub1" is 5 bits of the public key, so candidates are matched on their leading public key bits
+ * and never bech32-encoded.
+ */
+class VanitySearch(prefix: String) {
+
+    private val target: Long
+
+    private val mask: Long
+
+    // How many candidates a search takes on average.
+    val expectedAttempts: Long
+
+    private val result = AtomicReference<ByteArray>()
+
+    private val attempts = AtomicLong()
+
+    private val finished = CountDownLatch(1)
+
+    @Volatile
+    private var stopped = false
+
+    init {
+        val chars = prefix.lowercase().removePrefix("npub1")
+        require(chars.length in 1..MAX_PREFIX_LENGTH) { "prefix must contain 1 to $MAX_PREFIX_LENGTH characters" }
+        var value = 0L
+        for (c in chars) {
+            val v = Bech32.alphabet.indexOf(c)
+            require(v >= 0) { "invalid character $c" }
+            value = (value shl 5) or v.toLong()
+        }
+        val bits = chars.length * 5
+        target = value shl (64 - bits)
+        mask = -1L shl (64 - bits)
+        expectedAttempts = 1L shl bits
+    }
+
+    fun matches(publicKey: ByteArray): Boolean {
+        var head = 0L
+        for (i in 0 until 8) {
+            head = (head shl 8) or (publicKey[i].toLong() and 0xff)
+        }
+        return (head and mask) == target
+    }
+
+    /**
+     * Runs one worker until a key matches or the search is stopped.
+     * @return the matching private key, only to the worker that found it
+     */
+    fun search(): ByteArray? {
+        val random = SecureRandom()
+        val privateKey = ByteArray(32)
+        var count = 0L
+        try {
+            while (!stopped) {
+                random.nextBytes(privateKey)
+                val publicKey = try {
+                    Utils.pubkeyCreate(privateKey)
+                } catch (e: RuntimeException) {
+                    // zero or out of the curve order
+                    continue
+                }
+                count++
+                if (matches(publicKey)) {
+                    val found = privateKey.copyOf()
+                    if (result.compareAndSet(null, found)) {
+                        stop()
+                        return found
+                    }
+                    found.fill(0)
+                    return null
+                }
+                if (count == PROGRESS_BATCH) {
+                    attempts.addAndGet(count)
+                    count = 0
+                }
+            }
+            return null
+        } finally {
+            attempts.addAndGet(count)
+            privateKey.fill(0)
+        }
+    }
+
+    fun stop() {
+        stopped = true
+        finished.countDown()
+    }
+
+    // True once a key is found or the search is stopped.
+    fun isFinished(): Boolean = finished.count == 0L
+
+    fun getResult(): ByteArray? = result.get()
+
+    fun getAttempts(): Long = attempts.get()
+
+    companion object {
+        const val MAX_PREFIX_LENGTH = 12
+        private const val PROGRESS_BATCH = 256L
+    }
+}
@@ -2,6 +2,7 @@ var exec = require('cordova/exec');
 
 const SERVICE_NAME = "NostrKeyStore";
 const SIGN_EVENT = "signEvent";
+const SIGN_EVENTS = "signEvents";
 const GET_PUBLIC_KEY = "getPublicKey";
 const LIST_KEYS = "listKeys";
 const ADD_KEY = "addKey";
@@ -12,11 +13,62 @@ const SHOW_KEY = "showKey";
 const DELETE_KEY = "deleteKey";
 const ENCRYPT_KEY = "encrypt";
 const DECRYPT_KEY = "decrypt";
+const NIP44_ENCRYPT = "nip44Encrypt";
+const NIP44_DECRYPT = "nip44Decrypt";
+const SIGN_EVENT_BINARY = "signEventBinary";
+const ENCRYPT_BINARY = "encryptBinary";
+const DECRYPT_BINARY = "decryptBinary";
+const NIP44_ENCRYPT_BINARY = "nip44EncryptBinary";
+const NIP44_DECRYPT_BINARY = "nip44DecryptBinary";
+const DECRYPT_BATCH = "decryptBatch";
+const LOCK = "lock";
+const WARM_UP_SECRETS = "warmUpSecrets";
+const GET_CACHE_STATS = "getCacheStats";
+const NIP19_ENCODE = "nip19Encode";
+const NIP19_DECODE = "nip19Decode";
+const VERIFY_EVENTS = "verifyEvents";
+const MINE_EVENT = "mineEvent";
+const GENERATE_VANITY_KEY = "generateVanityKey";
+const CANCEL_JOB = "cancelJob";
+const WRAP = "wrap";
+const UNWRAP_BATCH = "unwrapBatch";
+const GET_METRICS = "getMetrics";
+const RESET_METRICS = "resetMetrics";
+const LIST_SIGNERS = "listSigners";
+const SET_SIGNER_APPROVAL = "setSignerApproval";
+const WATCH_SIGNER_REQUESTS = "watchSignerRequests";
+
+// cordova only passes ArrayBuffer arguments as binary, typed arrays are copied into one
+function toArrayBuffer(data) {
+    if (data instanceof ArrayBuffer) {
+        return data;
+    }
+    return data.buffer.slice(data.byteOffset, data.byteOffset + data.byteLength);
+}
+
+// long running actions send {done: false, ...} progress updates before their result
+function withProgress(success, progress) {
+    return function (result) {
+        if (result && result.done === false) {
+            if (progress) {
+                progress(result);
+            }
+        } else {
+            success(result);
+        }
+    };
+}
 
 var NostrKeyStore = {
 
-    signEvent: function (success, error, msg) {
-        exec(success, error, SERVICE_NAME, SIGN_EVENT, [msg]);
+    // Actions that use a key take an optional trailing account, the public key of the key to use
+    // instead of the selected one. Passing it doesn't change the selected key.
+    signEvent: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, SIGN_EVENT, [msg, account || null]);
+    },
+
+    signEvents: function (success, error, events, account) {
+        exec(success, error, SERVICE_NAME, SIGN_EVENTS, [events, account || null]);
     },
 
     getPublicKey: function (success, error) {
@@ -51,12 +103,127 @@ var NostrKeyStore = {
         exec(success, error, SERVICE_NAME, DELETE_KEY, [msg]);
     },
 
-    encrypt: function (success, error, msg) {
-        exec(success, error, SERVICE_NAME, ENCRYPT_KEY, [msg]);
+    encrypt: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, ENCRYPT_KEY, [msg, account || null]);
+    },
+
+    decrypt: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, DECRYPT_KEY, [msg, account || null]);
+    },
+
+    nip44Encrypt: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, NIP44_ENCRYPT, [msg, account || null]);
+    },
+
+    nip44Decrypt: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, NIP44_DECRYPT, [msg, account || null]);
+    },
+
+    // success receives an ArrayBuffer: id (32 bytes), pubkey (32 bytes), sig (64 bytes)
+    signEventBinary: function (success, error, msg, account) {
+        exec(success, error, SERVICE_NAME, SIGN_EVENT_BINARY, [msg, account || null]);
+    },
+
+    // success receives an ArrayBuffer: iv (16 bytes) followed by the ciphertext
+    encryptBinary: function (success, error, pubkey, plaintext, account) {
+        exec(success, error, SERVICE_NAME, ENCRYPT_BINARY, [toArrayBuffer(pubkey), toArrayBuffer(plaintext), account || null]);
+    },
+
+    decryptBinary: function (success, error, pubkey, ciphertext, account) {
+        exec(success, error, SERVICE_NAME, DECRYPT_BINARY, [toArrayBuffer(pubkey), toArrayBuffer(ciphertext), account || null]);
+    },
+
+    // success receives the raw NIP-44 payload, without base64
+    nip44EncryptBinary: function (success, error, pubkey, plaintext, account) {
+        exec(success, error, SERVICE_NAME, NIP44_ENCRYPT_BINARY, [toArrayBuffer(pubkey), toArrayBuffer(plaintext), account || null]);
+    },
+
+    nip44DecryptBinary: function (success, error, pubkey, payload, account) {
+        exec(success, error, SERVICE_NAME, NIP44_DECRYPT_BINARY, [toArrayBuffer(pubkey), toArrayBuffer(payload), account || null]);
+    },
+
+    decryptBatch: function (success, error, items, chunkSize, account) {
+        exec(success, error, SERVICE_NAME, DECRYPT_BATCH, [items, chunkSize || null, account || null]);
+    },
+
+    lock: function (success, error) {
+        exec(success, error, SERVICE_NAME, LOCK, []);
+    },
+
+    warmUpSecrets: function (success, error, pubkeys, account) {
+        exec(success, error, SERVICE_NAME, WARM_UP_SECRETS, [pubkeys, account || null]);
+    },
+
+    getCacheStats: function (success, error) {
+        exec(success, error, SERVICE_NAME, GET_CACHE_STATS, []);
+    },
+
+    nip19Encode: function (success, error, entities) {
+        exec(success, error, SERVICE_NAME, NIP19_ENCODE, [entities]);
+    },
+
+    nip19Decode: function (success, error, entities) {
+        exec(success, error, SERVICE_NAME, NIP19_DECODE, [entities]);
+    },
+
+    // result.bitmap is base64, event i is valid when bit (i % 8) of byte (i / 8) is set
+    verifyEvents: function (success, error, events, useCache) {
+        exec(success, error, SERVICE_NAME, VERIFY_EVENTS, [events, useCache !== false]);
+    },
+
+    // options: {jobId, timeout, pubkey} where timeout is in ms, 0 for none; progress gets {hashes, hashRate, bestDifficulty, elapsed}
+    mineEvent: function (success, error, event, difficulty, options, progress) {
+        exec(withProgress(success, progress), error, SERVICE_NAME, MINE_EVENT, [event, difficulty, options || {}]);
     },
 
-    decrypt: function (success, error, msg) {
-        exec(success, error, SERVICE_NAME, DECRYPT_KEY, [msg]);
+    // prefix: bech32 characters the npub should start with, "npub1" optional
+    // options: {jobId, timeout, name}; progress gets {attempts, keyRate, expectedAttempts, elapsed}
+    generateVanityKey: function (success, error, prefix, options, progress) {
+        exec(withProgress(success, progress), error, SERVICE_NAME, GENERATE_VANITY_KEY, [prefix, options || {}]);
+    },
+
+    cancelJob: function (success, error, jobId) {
+        exec(success, error, SERVICE_NAME, CANCEL_JOB, [jobId]);
+    },
+
+    // NIP-59: success receives {rumor, wraps} with one kind 1059 gift wrap per recipient, in order
+    wrap: function (success, error, rumor, recipients, account) {
+        exec(success, error, SERVICE_NAME, WRAP, [rumor, recipients, account || null]);
+    },
+
+    // like decryptBatch, chunks of {rumor} or {error} results in input order
+    unwrapBatch: function (success, error, giftWraps, chunkSize, account) {
+        exec(success, error, SERVICE_NAME, UNWRAP_BATCH, [giftWraps, chunkSize || null, account || null]);
+    },
+
+    // success receives {enabled, actions, stages, counters, caches}, latencies are in microseconds
+    getMetrics: function (success, error) {
+        exec(success, error, SERVICE_NAME, GET_METRICS, []);
+    },
+
+    // enabled is optional, it turns recording on or off
+    resetMetrics: function (success, error, enabled) {
+        exec(success, error, SERVICE_NAME, RESET_METRICS, [typeof enabled === "boolean" ? enabled : null]);
+    },
+
+    // success receives {<package>: {<account>: {<operation>: {status, requests, lastRequest}}}} for apps
+    // that used the signer provider
+    listSigners: function (success, error) {
+        exec(success, error, SERVICE_NAME, LIST_SIGNERS, []);
+    },
+
+    // operation: one of GET_PUBLIC_KEY, SIGN_EVENT, NIP04_ENCRYPT, NIP04_DECRYPT, NIP44_ENCRYPT,
+    // NIP44_DECRYPT. approved: true or false for the app doing that operation with that account,
+    // null forgets the decision so it is pending again, for every operation when operation is null
+    // too and for every account of the app when account is null as well
+    setSignerApproval: function (success, error, packageName, account, operation, approved) {
+        exec(success, error, SERVICE_NAME, SET_SIGNER_APPROVAL, [packageName, account || null, operation || null, typeof approved === "boolean" ? approved : null]);
+    },
+
+    // request receives {packageName, account, operation} each time an app asks for an operation
+    // and account it has no decision for
+    watchSignerRequests: function (request, error) {
+        exec(request, error, SERVICE_NAME, WATCH_SIGNER_REQUESTS, []);
     }
 
 };
@@ -117,6 +284,34 @@ function onDeviceReady() {
                     )
                 })
             }
+        },
+        nip44: {
+            encrypt: function (pubkey, plaintext) {
+                return new Promise((resolve, reject) => {
+                    cordova.plugins.NostrKeyStore.nip44Encrypt(
+                        function (res) {
+                            resolve(res)
+                        },
+                        function (error) {
+                            reject(error)
+                        },
+                        {pubkey, plaintext}
+                    )
+                })
+            },
+            decrypt: function (pubkey, ciphertext) {
+                return new Promise((resolve, reject) => {
+                    cordova.plugins.NostrKeyStore.nip44Decrypt(
+                        function (res) {
+                            resolve(res)
+                        },
+                        function (error) {
+                            reject(error)
+                        },
+                        {pubkey, ciphertext}
+                    )
+                })
+            }
         }
     }
 